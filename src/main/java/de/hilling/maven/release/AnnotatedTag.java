@@ -1,36 +1,215 @@
 package de.hilling.maven.release;
 
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import de.hilling.maven.release.exceptions.ReleaseException;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.ReleaseTags;
 import de.hilling.maven.release.utils.Guard;
 import de.hilling.maven.release.versioning.GsonFactory;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
 import de.hilling.maven.release.versioning.ReleaseInfo;
 
+/**
+ * Release tag carrying the release info in its message.
+ * <p>
+ * If the release info is committed at the tagged commit or attached to it as a note, the message only contains the
+ * modules released with the tag and the id of the release info blob, shard tree or note, see {@link TagPayload}. The
+ * complete release info is read from there when requested. Tags of older releases contain the complete release
+ * info.
+ * </p>
+ */
 public class AnnotatedTag {
-    private static final GsonFactory GSON_FACTORY = new GsonFactory();
+    private static final String RELEASED_MODULES = "releasedModules";
+    private static final Gson   GSON             = withTagPayload(GsonFactory.gson());
+    private static final Gson   COMPACT_GSON     = withTagPayload(GsonFactory.compactGson());
 
-    private final String name;
-    private final ReleaseInfo releaseInfo;
+    private final String      name;
+    private final Repository  repository;
+    private final TagPayload  payload;
+    private       ReleaseInfo releaseInfo;
 
     public AnnotatedTag(String name, ReleaseInfo releaseInfo) {
         Guard.notBlank("tag name", name);
         Guard.notNull("tag message", releaseInfo);
         this.name = name;
         this.releaseInfo = releaseInfo;
+        this.repository = null;
+        this.payload = null;
+    }
+
+    private AnnotatedTag(String name, Repository repository, TagPayload payload) {
+        this.name = name;
+        this.repository = repository;
+        this.payload = payload;
+    }
+
+    /**
+     * Read a tag written by {@link #saveAtHEAD(Git)}.
+     *
+     * @param repository repository containing the tag.
+     * @param gitTag ref of the tag.
+     * @return the tag. The release info of compact tags is read from the repository on first access.
+     * @throws IOException if the tag cannot be read.
+     * @throws JsonSyntaxException if the tag message is not a release info.
+     */
+    public static AnnotatedTag fromRef(Repository repository, Ref gitTag) throws IOException {
+        Guard.notNull("gitTag", gitTag);
+        final String tagName = Repository.shortenRefName(gitTag.getName());
+        final String message;
+        try (RevWalk walk = new RevWalk(repository)) {
+            final RevTag tag = walk.parseTag(gitTag.getObjectId());
+            message = tag.getFullMessage();
+        }
+        final JsonElement json = JsonParser.parseString(message);
+        if (!json.isJsonObject()) {
+            throw new JsonSyntaxException("message of tag " + tagName + " is no release info");
+        }
+        if (json.getAsJsonObject().has(RELEASED_MODULES)) {
+            return new AnnotatedTag(tagName, repository, GSON.fromJson(json, ImmutableTagPayload.class));
+        }
+        return new AnnotatedTag(tagName, GSON.fromJson(json, ImmutableReleaseInfo.class));
+    }
+
+    /**
+     * Find the newest release tag on the history of HEAD. Only refs and commits are read, apart from the tag found.
+     *
+     * @param repository the repository.
+     * @return the tag, empty if no annotated release tag is reachable from HEAD.
+     * @throws IOException if the repository cannot be read.
+     * @throws JsonSyntaxException if the message of the tag found is not a release info.
+     */
+    public static Optional<AnnotatedTag> latestReachable(Repository repository) throws IOException {
+        final ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return Optional.empty();
+        }
+        final Map<ObjectId, Ref> tagsByCommit = new HashMap<>();
+        for (Ref ref : repository.getRefDatabase().getRefsByPrefix(ReleaseTags.RELEASE_TAG_PREFIX)) {
+            final ObjectId commit = repository.getRefDatabase().peel(ref).getPeeledObjectId();
+            if (commit != null) {
+                tagsByCommit.merge(commit, ref, (first, second) -> first.getName().compareTo(second.getName()) >= 0
+                                                                   ? first
+                                                                   : second);
+            }
+        }
+        if (tagsByCommit.isEmpty()) {
+            return Optional.empty();
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(head));
+            for (RevCommit commit : walk) {
+                final Ref tag = tagsByCommit.get(commit);
+                if (tag != null) {
+                    return Optional.of(fromRef(repository, tag));
+                }
+            }
+        }
+        return Optional.empty();
     }
 
     public Ref saveAtHEAD(Git git) throws GitAPIException {
-        final String message = GSON_FACTORY.createGson().toJson(releaseInfo);
+        final Optional<ObjectId> releaseInfoBlob = committedReleaseInfo(git.getRepository());
+        final String message;
+        if (releaseInfoBlob.isPresent()) {
+            final TagPayload tagPayload = ImmutableTagPayload.builder().releasedModules(getReleasedModules())
+                                                          .releaseInfoBlob(releaseInfoBlob.get().name()).build();
+            message = COMPACT_GSON.toJson(tagPayload);
+        } else {
+            message = GSON.toJson(releaseInfo);
+        }
         return git.tag().setName(name).setAnnotated(true).setMessage(message).call();
     }
 
-    public ReleaseInfo getReleaseInfo() {
+    /**
+     * A compact tag only refers to the release info, which is read from the blob, shard tree or note on first access.
+     * These objects may be missing in a partial clone.
+     *
+     * @return complete release info of the tag.
+     * @throws ReleaseException if the release info cannot be read, naming the object of the release info.
+     */
+    public synchronized ReleaseInfo getReleaseInfo() {
+        if (releaseInfo == null) {
+            try (ObjectReader reader = repository.newObjectReader()) {
+                releaseInfo = ReleaseInfoStorage.read(reader, ObjectId.fromString(payload.getReleaseInfoBlob()));
+            } catch (IOException | JsonParseException e) {
+                throw new ReleaseException("unable to read release info " + payload.getReleaseInfoBlob() + " of tag "
+                                           + name + ": " + e.getMessage(), e);
+            }
+        }
         return releaseInfo;
     }
 
+    /**
+     * @return versions of the modules released with this tag, available without reading the complete release info.
+     */
+    public List<ImmutableModuleVersion> getReleasedModules() {
+        if (payload != null) {
+            return payload.getReleasedModules();
+        }
+        return releaseInfo.getModules().stream().filter(module -> name.equals(module.getReleaseTag()))
+                          .collect(toList());
+    }
+
     public String name() {
         return name;
     }
+
+    /**
+     * @return id of the release info blob, shard tree or note at HEAD, if its content is the release info of this tag.
+     */
+    private Optional<ObjectId> committedReleaseInfo(Repository repo) {
+        try (RevWalk walk = new RevWalk(repo)) {
+            final ObjectId head = repo.resolve(Constants.HEAD);
+            if (head == null) {
+                return Optional.empty();
+            }
+            Optional<ObjectId> id = ReleaseInfoStorage.find(walk.getObjectReader(), walk.parseCommit(head).getTree());
+            if (!id.isPresent()) {
+                id = ReleaseInfoStorage.findNote(repo, walk.getObjectReader(), head);
+            }
+            if (!id.isPresent()) {
+                return Optional.empty();
+            }
+            final ReleaseInfo committed = ReleaseInfoStorage.read(walk.getObjectReader(), id.get());
+            final boolean sameRelease = committed.getTagName().equals(releaseInfo.getTagName())
+                                        && new HashSet<>(committed.getModules())
+                                               .equals(new HashSet<>(releaseInfo.getModules()));
+            return sameRelease
+                   ? id
+                   : Optional.empty();
+        } catch (IOException | JsonSyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Gson withTagPayload(Gson gson) {
+        return gson.newBuilder().registerTypeAdapterFactory(new GsonAdaptersTagPayload()).create();
+    }
 }
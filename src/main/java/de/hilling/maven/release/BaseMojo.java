@@ -4,12 +4,15 @@ import static de.hilling.maven.release.utils.GitHelper.getRemoteUrlOrNullIfNoneS
 import static de.hilling.maven.release.repository.LocalGitRepo.fromCurrentDir;
 import static java.lang.String.format;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.maven.model.Scm;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Server;
@@ -17,11 +20,17 @@ import org.apache.maven.settings.Settings;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 
+import com.google.gson.JsonParseException;
+
+import de.hilling.maven.release.exceptions.ReleaseException;
 import de.hilling.maven.release.exceptions.ValidationException;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.GitContext;
 import de.hilling.maven.release.repository.LocalGitRepo;
 import de.hilling.maven.release.utils.ErrorUtils;
 import de.hilling.maven.release.utils.JacocoLoader;
 import de.hilling.maven.release.utils.SshAgentSessionFactory;
+import de.hilling.maven.release.versioning.ReleaseInfo;
 
 /**
  * Base class for {@link NextMojo} and {@link ReleaseMojo}.
@@ -54,6 +63,47 @@ public abstract class BaseMojo extends AbstractMojo {
      */
     @Parameter(defaultValue = "false", alias = "bugfixRelease", property = "bugfixRelease")
     protected boolean         bugfixRelease;
+    /**
+     * Detect changes by comparing the tree of each module at the tag of its previous release with the tree at HEAD
+     * instead of walking all commits in between. Changes that have been reverted since the previous release are not
+     * detected in this mode.
+     */
+    @Parameter(defaultValue = "false", alias = "compareTrees", property = "compareTrees")
+    protected boolean         compareTrees;
+    /**
+     * Read the release info from the message of the newest release tag reachable from HEAD instead of the project
+     * directory, e.g. in shallow or sparse checkouts. Only the tag object and the commits up to it are read. If there
+     * is no such tag, the release info of the project directory is used.
+     */
+    @Parameter(defaultValue = "false", alias = "releaseInfoFromTag", property = "releaseInfoFromTag")
+    protected boolean         releaseInfoFromTag;
+    /**
+     * Number of threads used to detect changes of the modules. Defaults to the number of available processors, use 1
+     * to detect changes on the build thread only.
+     */
+    @Parameter(alias = "detectionThreads", property = "detectionThreads")
+    protected Integer         detectionThreads;
+    /**
+     * Time in seconds the release tags found on the remote are cached in the git directory. Tags that exist locally
+     * are not looked up remotely at all. Use 0 to disable the cache.
+     */
+    @Parameter(defaultValue = "3600", alias = "remoteTagCacheTtl", property = "remoteTagCacheTtl")
+    protected long            remoteTagCacheTtl;
+    /**
+     * Maximum number of bytes of pack files JGit holds in memory. Raise it for large repositories.
+     */
+    @Parameter(alias = "packedGitLimit", property = "packedGitLimit")
+    private   Long            packedGitLimit;
+    /**
+     * Maximum number of bytes of delta bases JGit caches per reader.
+     */
+    @Parameter(alias = "deltaBaseCacheLimit", property = "deltaBaseCacheLimit")
+    private   Integer         deltaBaseCacheLimit;
+    /**
+     * Let JGit use memory mapping to read pack files.
+     */
+    @Parameter(alias = "packedGitMMAP", property = "packedGitMMAP")
+    private   Boolean         packedGitMMAP;
     /**
      * Disable use of the ssh agent.
      */
@@ -91,10 +141,16 @@ public abstract class BaseMojo extends AbstractMojo {
     public final void execute() throws MojoExecutionException, MojoFailureException {
         try {
             configureJsch();
+            GitContext.configureWindowCache(packedGitLimit, deltaBaseCacheLimit, packedGitMMAP);
             final Scm originalScm = project.getOriginalModel().getScm();
             final Scm scm = project.getModel().getScm();
             final LocalGitRepo repo = fromCurrentDir(getRemoteUrlOrNullIfNoneSet(originalScm, scm), getLog());
-            executeConcreteMojo(scm, originalScm, repo);
+            repo.setRemoteTagCacheTtl(remoteTagCacheTtl);
+            try {
+                executeConcreteMojo(scm, originalScm, repo);
+            } finally {
+                repo.context().close();
+            }
         } catch (ValidationException e) {
             ErrorUtils.printBigErrorMessageAndThrow(getLog(), e.getMessage(), e.getMessages());
         } catch (GitAPIException gae) {
@@ -108,6 +164,57 @@ public abstract class BaseMojo extends AbstractMojo {
                                                                                              GitAPIException,
                                                                                              ValidationException;
 
+    /**
+     * @param storage storage of the release info in the project directory.
+     * @param repo the repository.
+     * @return the release info of the previous release.
+     * @throws MojoExecutionException if the release info cannot be read.
+     */
+    protected final ReleaseInfo loadReleaseInfo(ReleaseInfoStorage storage, LocalGitRepo repo) throws
+                                                                                              MojoExecutionException {
+        return loadReleaseInfo(getLog(), storage, repo, releaseInfoFromTag);
+    }
+
+    /**
+     * @param log log.
+     * @param storage storage of the release info in the project directory.
+     * @param repo the repository.
+     * @param fromTag read the release info from the newest release tag on the history of HEAD if there is one.
+     * @return the release info of the previous release.
+     * @throws MojoExecutionException if the release info cannot be read, also if a release tag is reachable but its
+     * release info is missing.
+     */
+    static ReleaseInfo loadReleaseInfo(Log log, ReleaseInfoStorage storage, LocalGitRepo repo, boolean fromTag)
+        throws MojoExecutionException {
+        if (fromTag) {
+            final Optional<AnnotatedTag> tag;
+            try {
+                tag = AnnotatedTag.latestReachable(repo.git.getRepository());
+            } catch (IOException | JsonParseException e) {
+                throw new MojoExecutionException("unable to read the latest release tag reachable from HEAD: "
+                                                 + e.getMessage(), e);
+            }
+            if (tag.isPresent()) {
+                try {
+                    final ReleaseInfo releaseInfo = tag.get().getReleaseInfo();
+                    log.info("release info read from tag " + tag.get().name());
+                    return releaseInfo;
+                } catch (ReleaseException e) {
+                    throw new MojoExecutionException(e.getMessage() + ", fetch the missing objects or run without "
+                                                     + "releaseInfoFromTag", e);
+                }
+            }
+            log.warn("no release tag reachable from HEAD, reading release info from the project directory");
+        }
+        return storage.load();
+    }
+
+    protected final int detectionThreads() {
+        return detectionThreads == null
+               ? Runtime.getRuntime().availableProcessors()
+               : detectionThreads;
+    }
+
     final void setSettings(final Settings settings) {
         this.settings = settings;
     }
@@ -134,22 +241,38 @@ public abstract class BaseMojo extends AbstractMojo {
 
     protected final void configureJsch() {
         if (!disableSshAgent) {
-            if (serverId != null) {
-                final Server server = settings.getServer(serverId);
-                if (server != null) {
-                    privateKey = privateKey == null
-                                 ? server.getPrivateKey()
-                                 : privateKey;
-                    passphrase = passphrase == null
-                                 ? server.getPassphrase()
-                                 : passphrase;
-                } else {
-                    getLog().warn(format("No server configuration in Maven settings found with id %s", serverId));
-                }
-            }
+            configureJsch(getLog(), settings, serverId, knownHosts, privateKey, passphrase);
+        }
+    }
 
-            JschConfigSessionFactory
-                .setInstance(new SshAgentSessionFactory(getLog(), knownHosts, privateKey, passphrase));
+    /**
+     * Use the ssh agent for git, with the given key and known hosts.
+     *
+     * @param log log.
+     * @param settings maven settings to read the key of the server from.
+     * @param serverId id of the server in the settings, may be {@code null}.
+     * @param knownHosts known hosts file, may be {@code null}.
+     * @param privateKey private key file, overrides the key of the server. May be {@code null}.
+     * @param passphrase passphrase of the key, overrides the passphrase of the server. May be {@code null}.
+     */
+    static void configureJsch(Log log, Settings settings, String serverId, String knownHosts, String privateKey,
+                              String passphrase) {
+        String key = privateKey;
+        String keyPassphrase = passphrase;
+        if (serverId != null) {
+            final Server server = settings.getServer(serverId);
+            if (server != null) {
+                key = key == null
+                      ? server.getPrivateKey()
+                      : key;
+                keyPassphrase = keyPassphrase == null
+                                ? server.getPassphrase()
+                                : keyPassphrase;
+            } else {
+                log.warn(format("No server configuration in Maven settings found with id %s", serverId));
+            }
         }
+
+        JschConfigSessionFactory.setInstance(new SshAgentSessionFactory(log, knownHosts, key, keyPassphrase));
     }
 }
@@ -0,0 +1,24 @@
+package de.hilling.maven.release;
+
+import java.util.Map;
+
+import org.immutables.gson.Gson;
+import org.immutables.value.Value;
+
+/**
+ * Result of a change detection against a release tag, stored in the {@link ChangeCache}.
+ */
+@Gson.TypeAdapters
+@Value.Immutable
+public interface CachedChanges {
+
+    /**
+     * @return id of the HEAD commit the changes were detected at.
+     */
+    String getHead();
+
+    /**
+     * @return map of module path to true if the module changed between the tag and {@link #getHead()}.
+     */
+    Map<String, Boolean> getChanges();
+}
@@ -0,0 +1,107 @@
+package de.hilling.maven.release;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.AnyObjectId;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import de.hilling.maven.release.versioning.GsonFactory;
+
+/**
+ * Persistent cache of detected changes, kept in the git directory so it survives between builds and never shows up
+ * as an uncommitted change.
+ * <p>
+ * Entries are keyed by the id of the release tag and store the HEAD checked last and the detected changes. Only the
+ * entries used by the current build are written back, so entries of older releases are dropped. A cache that cannot
+ * be read is ignored, the changes are detected from scratch then.
+ * </p>
+ */
+class ChangeCache {
+    static final String CACHE_FILE = "smart-release/change-cache-v1.json";
+
+    private static final Type ENTRIES_TYPE = new TypeToken<Map<String, ImmutableCachedChanges>>() {
+    }.getType();
+    private static final Gson GSON         = GsonFactory.gson().newBuilder()
+                                                        .registerTypeAdapterFactory(new GsonAdaptersCachedChanges())
+                                                        .create();
+
+    private final    File                                file;
+    private final    Log                                 log;
+    private final    Map<String, ImmutableCachedChanges> loaded;
+    private final    Map<String, ImmutableCachedChanges> used = new ConcurrentHashMap<>();
+    private volatile boolean                             modified;
+
+    private ChangeCache(File file, Map<String, ImmutableCachedChanges> loaded, Log log) {
+        this.file = file;
+        this.loaded = loaded;
+        this.log = log;
+    }
+
+    /**
+     * @param gitDir git directory of the repository.
+     * @param log maven logger.
+     * @return cache with the entries stored by the previous build, empty if none can be read.
+     */
+    static ChangeCache load(File gitDir, Log log) {
+        final File file = new File(gitDir, CACHE_FILE);
+        Map<String, ImmutableCachedChanges> entries = null;
+        if (file.exists()) {
+            try {
+                final String json = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                entries = GSON.fromJson(json, ENTRIES_TYPE);
+            } catch (Exception e) {
+                log.warn("ignoring unreadable change cache " + file + ": " + e.getMessage());
+            }
+        }
+        return new ChangeCache(file, entries == null ? new ConcurrentHashMap<>() : new ConcurrentHashMap<>(entries),
+                               log);
+    }
+
+    /**
+     * @param tagId id of the release tag.
+     * @return changes detected against the tag by a previous detection.
+     */
+    Optional<ImmutableCachedChanges> get(AnyObjectId tagId) {
+        final ImmutableCachedChanges cached = loaded.get(tagId.name());
+        if (cached != null) {
+            used.putIfAbsent(tagId.name(), cached);
+        }
+        return Optional.ofNullable(cached);
+    }
+
+    /**
+     * @param tagId id of the release tag.
+     * @param head id of the HEAD commit the changes were detected at.
+     * @param changes map of module path to true if the module changed.
+     */
+    void put(AnyObjectId tagId, AnyObjectId head, Map<String, Boolean> changes) {
+        final ImmutableCachedChanges entry = ImmutableCachedChanges.builder().head(head.name()).changes(changes).build();
+        loaded.put(tagId.name(), entry);
+        used.put(tagId.name(), entry);
+        modified = true;
+    }
+
+    /**
+     * Write the entries used by this build, failures are logged only.
+     */
+    void store() {
+        if (!modified) {
+            return;
+        }
+        try {
+            FileUtils.write(file, GSON.toJson(used, ENTRIES_TYPE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("unable to store change cache " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package de.hilling.maven.release;
+
+/**
+ * Which part of the working tree must be clean for a release.
+ */
+public enum CleanCheck {
+    Full, Reactor;
+}
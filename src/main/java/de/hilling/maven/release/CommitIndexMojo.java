@@ -0,0 +1,58 @@
+package de.hilling.maven.release;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.model.Scm;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+
+import de.hilling.maven.release.repository.CommitIndex;
+import de.hilling.maven.release.repository.LocalGitRepo;
+
+/**
+ * Writes the commit index used to speed up change detection, or adds the commits missing from it. The index contains
+ * generation numbers and changed path filters of all commits reachable from HEAD, like the commit-graph of git.
+ * Commits created after the index was written are handled without it, so running this goal regularly, e.g. on a build
+ * server, keeps detection fast on repositories with a long history.
+ */
+@Mojo(name = "commit-index", requiresDirectInvocation = true,
+      // this should not be bound to a phase as this plugin starts a phase itself
+      inheritByDefault = true, // so you can configure this in a shared parent pom
+      requiresProject = true, // this can only run against a maven project
+      aggregator = true // the plugin should only run once against the aggregator pom
+      )
+public class CommitIndexMojo extends BaseMojo {
+
+    @Override
+    public void executeConcreteMojo(Scm scm, Scm originalScm, LocalGitRepo repo) throws MojoExecutionException,
+                                                                                        MojoFailureException,
+                                                                                        GitAPIException {
+        final File gitDir = repo.git.getRepository().getDirectory();
+        try {
+            CommitIndex index;
+            try {
+                index = CommitIndex.load(gitDir);
+            } catch (IOException e) {
+                getLog().warn("rewriting unreadable commit index: " + e.getMessage());
+                index = CommitIndex.empty();
+            }
+            final ObjectId head = repo.git.getRepository().resolve("HEAD");
+            if (head == null) {
+                throw new MojoExecutionException("no commits to index");
+            }
+            final int added = index.refresh(repo.context().reader(), head);
+            if (added == 0) {
+                getLog().info("commit index is up to date with " + index.size() + " commits");
+                return;
+            }
+            index.store(gitDir);
+            getLog().info("added " + added + " commits to the commit index, " + index.size() + " commits indexed");
+        } catch (IOException e) {
+            throw new MojoExecutionException("unable to write commit index", e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.hilling.maven.release;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.maven.model.Scm;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import de.hilling.maven.release.releaseinfo.ReleaseHistory;
+import de.hilling.maven.release.repository.LocalGitRepo;
+import de.hilling.maven.release.versioning.ModuleVersion;
+
+/**
+ * Reports the releases of a module from the release history, without walking the git history. Without the
+ * {@code artifact} parameter, all modules in the history are listed with their number of releases.
+ */
+@Mojo(name = "history", requiresDirectInvocation = true,
+      // this should not be bound to a phase as this plugin starts a phase itself
+      inheritByDefault = true, // so you can configure this in a shared parent pom
+      requiresProject = true, // this can only run against a maven project
+      aggregator = true // the plugin should only run once against the aggregator pom
+      )
+public class HistoryMojo extends BaseMojo {
+
+    /**
+     * Module to report the releases of, either as {@code artifactId} or as {@code groupId:artifactId}.
+     */
+    @Parameter(alias = "artifact", property = "artifact")
+    protected String artifact;
+
+    @Override
+    public void executeConcreteMojo(Scm scm, Scm originalScm, LocalGitRepo repo) throws MojoExecutionException,
+                                                                                        MojoFailureException,
+                                                                                        GitAPIException {
+        final ReleaseHistory history = new ReleaseHistory(project.getBasedir(), repo.git);
+        try {
+            final Map<String, Integer> artifacts = history.artifacts();
+            if (artifact == null) {
+                getLog().info(artifacts.size() + " modules in the release history");
+                artifacts.forEach((name, releases) -> getLog().info(" * " + name + ": " + releases + " releases"));
+                return;
+            }
+            final List<String> matching = artifacts.keySet().stream().filter(this::matches)
+                                                   .collect(Collectors.toList());
+            if (matching.isEmpty()) {
+                throw new MojoFailureException("no releases of " + artifact + " in the release history");
+            }
+            for (String name : matching) {
+                getLog().info("releases of " + name + ":");
+                for (ModuleVersion release : history.releases(name)) {
+                    getLog().info(" * " + release.getVersion() + " " + release.getReleaseTag() + " "
+                                  + release.getReleaseDate());
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("unable to read " + ReleaseHistory.HISTORY_FILE, e);
+        }
+    }
+
+    private boolean matches(String name) {
+        return name.equals(artifact) || name.endsWith(":" + artifact);
+    }
+}
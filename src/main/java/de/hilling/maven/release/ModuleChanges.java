@@ -0,0 +1,241 @@
+package de.hilling.maven.release;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+import de.hilling.maven.release.repository.LocalGitRepo;
+
+/**
+ * Changes of the reactor modules since their previous releases.
+ * <p>
+ * The history is walked only once per release tag, the changes of all modules are collected during that walk and
+ * cached for the following lookups. If the previous release recorded a fingerprint for a module, it is compared with
+ * the current fingerprint instead, which needs neither the tag nor the history.
+ * </p>
+ * <p>
+ * The detected changes are kept in a {@link ChangeCache}. The next build only walks the commits added since, modules
+ * known to have changed are not looked at again.
+ * </p>
+ * <p>
+ * With more than one detection thread, the walks for the tags passed to {@link #prefetch(Collection)} and the
+ * fingerprints are computed concurrently. Each detection thread reads the repository with its own reader and walks
+ * from the shared {@link de.hilling.maven.release.repository.GitContext}. Lookups still happen on the calling thread,
+ * so errors are reported in build order.
+ * </p>
+ */
+class ModuleChanges implements AutoCloseable {
+    private final LocalGitRepo                              gitRepo;
+    private final TreeWalkingDiffDetector                   detector;
+    private final ModuleFingerprints                        fingerprints;
+    private final ChangeCache                               changeCache;
+    private final List<String>                              modulePaths;
+    private final boolean                                   compareTrees;
+    private final int                                       detectionThreads;
+    private final ExecutorService                           executor;
+    private final Log                                       log;
+    private final Map<String, Future<Map<String, Boolean>>> changesByTag = new HashMap<>();
+    private       List<Future<Map<String, String>>>         fingerprintParts;
+    private       Map<String, String>                       fingerprintsAtHead;
+
+    /**
+     * @param gitRepo repository to detect changes in.
+     * @param modulePaths relative paths of all modules in the reactor.
+     * @param compareTrees compare trees instead of walking the history.
+     * @param detectionThreads number of threads to detect changes with, 1 to detect on the calling thread only.
+     * @param log maven logger.
+     */
+    ModuleChanges(LocalGitRepo gitRepo, List<String> modulePaths, boolean compareTrees, int detectionThreads, Log log) {
+        this.gitRepo = gitRepo;
+        this.detector = new TreeWalkingDiffDetector(gitRepo.context(), log, compareTrees);
+        this.fingerprints = new ModuleFingerprints(gitRepo.context());
+        this.changeCache = ChangeCache.load(gitRepo.git.getRepository().getDirectory(), log);
+        this.modulePaths = modulePaths;
+        this.compareTrees = compareTrees;
+        this.detectionThreads = Math.max(1, detectionThreads);
+        this.executor = this.detectionThreads > 1 ? Executors.newFixedThreadPool(this.detectionThreads,
+                                                                                 detectionThreadFactory()) : null;
+        this.log = log;
+    }
+
+    /**
+     * Start detecting the changes since the given tags and the current fingerprints in the background. If detection is
+     * single threaded, the lookups compute everything on demand, the tags are only announced to the repository then.
+     *
+     * @param tagNames tags of previous releases that will probably be looked up.
+     */
+    void prefetch(Collection<String> tagNames) {
+        gitRepo.expectTags(tagNames);
+        if (executor == null) {
+            return;
+        }
+        fingerprintParts();
+        tagNames.forEach(this::changesSince);
+    }
+
+    /**
+     * @param modulePath relative path of module.
+     * @param tagName tag of the previous release of the module.
+     * @return true if any change was detected in the module since the given tag.
+     * @throws MojoExecutionException if the tag cannot be found or the repository cannot be read.
+     */
+    boolean hasChangedSince(String modulePath, String tagName) throws MojoExecutionException {
+        return await(changesSince(tagName)).get(modulePath);
+    }
+
+    /**
+     * @param modulePath relative path of module.
+     * @return current fingerprint of the module, empty if the module is not committed yet.
+     * @throws MojoExecutionException if the repository cannot be read.
+     */
+    Optional<String> fingerprint(String modulePath) throws MojoExecutionException {
+        if (fingerprintsAtHead == null) {
+            final Map<String, String> merged = new HashMap<>();
+            for (Future<Map<String, String>> part : fingerprintParts()) {
+                merged.putAll(await(part));
+            }
+            fingerprintsAtHead = merged;
+        }
+        return Optional.ofNullable(fingerprintsAtHead.get(modulePath));
+    }
+
+    /**
+     * Cancel detections that are not needed anymore. Running detections are awaited, they use readers of the shared
+     * git context, which may be closed afterwards.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        changeCache.store();
+    }
+
+    private Future<Map<String, Boolean>> changesSince(String tagName) {
+        return changesByTag.computeIfAbsent(tagName, tag -> submit(() -> detectChanges(tag)));
+    }
+
+    private List<Future<Map<String, String>>> fingerprintParts() {
+        if (fingerprintParts == null) {
+            fingerprintParts = new ArrayList<>();
+            final int partSize = (modulePaths.size() + detectionThreads - 1) / detectionThreads;
+            for (int start = 0; start < modulePaths.size(); start += partSize) {
+                final List<String> part = modulePaths.subList(start, Math.min(start + partSize, modulePaths.size()));
+                fingerprintParts.add(submit(() -> computeFingerprints(part)));
+            }
+        }
+        return fingerprintParts;
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        final FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    private <T> T await(Future<T> future) throws MojoExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("interrupted while detecting changes", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof MojoExecutionException) {
+                log.error(cause.getMessage());
+                throw (MojoExecutionException) cause;
+            }
+            throw new MojoExecutionException("unable to detect changes", cause);
+        }
+    }
+
+    private Map<String, String> computeFingerprints(List<String> part) throws MojoExecutionException {
+        try {
+            return fingerprints.atHead(part, modulePaths);
+        } catch (IOException e) {
+            throw new MojoExecutionException("unable to compute module fingerprints", e);
+        }
+    }
+
+    private Map<String, Boolean> detectChanges(String tagName) throws MojoExecutionException {
+        try {
+            log.info("looking for tag with name '" + tagName + "'");
+            final Optional<Ref> tagRef = gitRepo.getRemoteTag(tagName);
+            if (!tagRef.isPresent()) {
+                throw new MojoExecutionException("unable to find remote tag " + tagName);
+            }
+            return compareTrees
+                   ? detector.changedModulesSince(modulePaths, tagRef.get())
+                   : changedModulesUsingCache(tagRef.get());
+        } catch (GitAPIException | IOException e) {
+            throw new MojoExecutionException("unable to list tags: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Walk only the commits since the HEAD checked by a previous build, if that HEAD is still part of the history and
+     * the modules have not been restructured since.
+     */
+    private Map<String, Boolean> changedModulesUsingCache(Ref tagRef) throws IOException {
+        final ObjectId tagId = tagRef.getObjectId();
+        final ObjectId head = detector.headId();
+        final Optional<ImmutableCachedChanges> cached = changeCache.get(tagId);
+        final Map<String, Boolean> changes;
+        if (cached.isPresent() && isContinuable(cached.get())) {
+            final ObjectId checkedHead = ObjectId.fromString(cached.get().getHead());
+            final List<String> changedModules = cached.get().getChanges().entrySet().stream()
+                                                      .filter(Map.Entry::getValue)
+                                                      .map(Map.Entry::getKey)
+                                                      .collect(Collectors.toList());
+            log.debug("continuing change detection since " + tagRef.getName() + " at " + checkedHead.name());
+            changes = detector.changedModulesSince(modulePaths, tagRef, checkedHead, changedModules);
+        } else {
+            changes = detector.changedModulesSince(modulePaths, tagRef);
+        }
+        changeCache.put(tagId, head, changes);
+        return changes;
+    }
+
+    private boolean isContinuable(ImmutableCachedChanges cached) throws IOException {
+        return ObjectId.isId(cached.getHead()) && cached.getChanges().keySet().equals(new HashSet<>(modulePaths))
+               && detector.isReachableFromHead(ObjectId.fromString(cached.getHead()));
+    }
+
+    private static ThreadFactory detectionThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "release-change-detection-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package de.hilling.maven.release;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.GitContext;
+import de.hilling.maven.release.repository.GitContext.WalkLease;
+
+/**
+ * Content fingerprints of modules.
+ * <p>
+ * The fingerprint of a module is the git tree id of its directory with the directories of all nested modules and the
+ * release info file removed. It only changes if the content owned by the module changes. The ids of the filtered
+ * trees are computed only, nothing is written to the repository.
+ * </p>
+ */
+public class ModuleFingerprints {
+
+    private final GitContext context;
+
+    public ModuleFingerprints(GitContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @param modulePaths relative paths of all modules (directories), "." for the root module.
+     * @return map of module path to fingerprint at HEAD. Modules not found in HEAD are missing.
+     * @throws IOException on git exception.
+     */
+    public Map<String, String> atHead(Collection<String> modulePaths) throws IOException {
+        return atHead(modulePaths, modulePaths);
+    }
+
+    /**
+     * Compute fingerprints for some of the modules only. The repository is read with the reader of the calling thread,
+     * so disjoint subsets of the modules can be handled concurrently.
+     *
+     * @param modulesToFingerprint relative paths of the modules to compute fingerprints for.
+     * @param modulePaths relative paths of all modules (directories), "." for the root module.
+     * @return map of module path to fingerprint at HEAD. Modules not found in HEAD are missing.
+     * @throws IOException on git exception.
+     */
+    public Map<String, String> atHead(Collection<String> modulesToFingerprint, Collection<String> modulePaths) throws
+                                                                                                                IOException {
+        final Map<String, String> fingerprints = new HashMap<>();
+        try (WalkLease walk = context.walk()) {
+            final ObjectReader reader = context.reader();
+            final RevTree rootTree = walk.get().parseCommit(
+                context.getRepository().getRefDatabase().findRef("HEAD").getObjectId()).getTree();
+            final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+            for (String modulePath : modulesToFingerprint) {
+                final ObjectId moduleTree = moduleTree(reader, rootTree, modulePath);
+                if (moduleTree != null) {
+                    final Set<String> nestedModules = nestedModules(modulePath, modulePaths);
+                    fingerprints.put(modulePath,
+                                     filteredTreeId(reader, formatter, moduleTree, "", nestedModules).name());
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    private static ObjectId moduleTree(ObjectReader reader, RevTree rootTree, String modulePath) throws IOException {
+        if (".".equals(modulePath)) {
+            return rootTree;
+        }
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, modulePath, rootTree)) {
+            if (treeWalk == null || !treeWalk.isSubtree()) {
+                return null;
+            }
+            return treeWalk.getObjectId(0);
+        }
+    }
+
+    /**
+     * @return paths of all modules below the given module, relative to the given module.
+     */
+    private static Set<String> nestedModules(String modulePath, Collection<String> modulePaths) {
+        final boolean isRootModule = ".".equals(modulePath);
+        final String prefix = modulePath + "/";
+        final Set<String> nested = new HashSet<>();
+        for (String candidate : modulePaths) {
+            if (candidate.equals(modulePath) || ".".equals(candidate)) {
+                continue;
+            }
+            if (isRootModule) {
+                nested.add(candidate);
+            } else if (candidate.startsWith(prefix)) {
+                nested.add(candidate.substring(prefix.length()));
+            }
+        }
+        return nested;
+    }
+
+    private static ObjectId filteredTreeId(ObjectReader reader, ObjectInserter.Formatter formatter, AnyObjectId treeId,
+                                           String prefix, Set<String> nestedModules) throws IOException {
+        final boolean topLevel = prefix.isEmpty();
+        final CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId);
+        final TreeFormatter tree = new TreeFormatter();
+        for (; !parser.eof(); parser.next()) {
+            final String name = parser.getEntryPathString();
+            final String path = prefix + name;
+            final FileMode mode = parser.getEntryFileMode();
+            if (nestedModules.contains(path) || (topLevel && ReleaseInfoStorage.isReleaseInfo(name))) {
+                continue;
+            }
+            if (mode == FileMode.TREE && containsNestedModule(nestedModules, path + "/")) {
+                tree.append(name, mode,
+                            filteredTreeId(reader, formatter, parser.getEntryObjectId(), path + "/", nestedModules));
+            } else {
+                tree.append(name, mode, parser.getEntryObjectId());
+            }
+        }
+        return formatter.idFor(Constants.OBJ_TREE, tree.toByteArray());
+    }
+
+    private static boolean containsNestedModule(Set<String> nestedModules, String directory) {
+        for (String nestedModule : nestedModules) {
+            if (nestedModule.startsWith(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -26,8 +26,8 @@ public class NextMojo extends BaseMojo {
 
     @Override
     public void executeConcreteMojo(Scm scm, Scm originalScm, LocalGitRepo repo) throws MojoExecutionException, MojoFailureException, GitAPIException {
-        ReleaseInfo previousRelease = new ReleaseInfoStorage(project.getBasedir(), repo.git).load();
+        ReleaseInfo previousRelease = loadReleaseInfo(new ReleaseInfoStorage(project.getBasedir(), repo.git), repo);
         Reactor.fromProjects(getLog(), repo, project, projects, modulesToForceRelease, noChangesAction, bugfixRelease,
-                             previousRelease);
+                             previousRelease, compareTrees, detectionThreads());
     }
 }
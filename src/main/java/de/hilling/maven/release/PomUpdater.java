@@ -1,73 +1,309 @@
 package de.hilling.maven.release;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
 import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Resource;
 import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.WriterFactory;
 
 import de.hilling.maven.release.exceptions.UnresolvedSnapshotDependencyException;
+import de.hilling.maven.release.utils.Constants;
 import de.hilling.maven.release.versioning.ImmutableFixVersion;
 
+/**
+ * Sets the release versions in the poms of the modules to release, either in the working tree or in release poms in
+ * the build directories. The versions are computed for all modules first, then the poms are written in parallel.
+ */
 public class PomUpdater {
 
     private final Log     log;
     private final Reactor reactor;
+    private final int     threads;
 
-    public PomUpdater(Log log, Reactor reactor) {
+    /**
+     * @param log log.
+     * @param reactor reactor with the modules to release.
+     * @param threads number of threads to write the poms with.
+     */
+    public PomUpdater(Log log, Reactor reactor, int threads) {
         this.log = log;
         this.reactor = reactor;
+        this.threads = Math.max(1, threads);
     }
 
-    private static boolean isMultiModuleReleasePlugin(Plugin plugin) {
+    static boolean isMultiModuleReleasePlugin(Plugin plugin) {
         return plugin.getGroupId().equals("de.hilling.maven.release") && plugin.getArtifactId().equals(
             "smart-release-plugin");
     }
 
+    /**
+     * Set the release versions in the poms of the modules to release.
+     *
+     * @return the changed poms and the errors found.
+     */
     public UpdateResult updateVersion() {
         List<File> changedPoms = new ArrayList<>();
         List<String> errors = new ArrayList<>();
-
-        final List<ReleasableModule> modulesToRelease = reactor.getModulesInBuildOrder().stream()
-                                                      .filter(ReleasableModule::isToBeReleased)
-                                                      .collect(Collectors.toList());
-        for (ReleasableModule module : modulesToRelease) {
+        final List<Callable<Void>> writes = new ArrayList<>();
+        for (ReleasableModule module : modulesToRelease()) {
             try {
                 MavenProject project = module.getProject();
                 final ImmutableFixVersion version = module.getImmutableModule().getVersion();
                 log.info("Going to release " + module.getProject().getArtifactId() + " " + version.toString());
 
-                List<String> errorsForCurrentPom = alterModel(project, version.toString());
+                final PomVersionRewriter rewriter = new PomVersionRewriter(version.toString());
+                List<String> errorsForCurrentPom = alterModel(project, version.toString(), rewriter);
                 errors.addAll(errorsForCurrentPom);
 
-                File pom = project.getFile().getCanonicalFile();
+                final File pom = project.getFile().getCanonicalFile();
                 changedPoms.add(pom);
-                Writer fileWriter = WriterFactory.newXmlWriter(pom);
+                writes.add(() -> {
+                    rewriter.rewrite(pom);
+                    return null;
+                });
+            } catch (Exception e) {
+                return new UpdateResult(changedPoms, errors, e);
+            }
+        }
+        if (!errors.isEmpty()) {
+            return new UpdateResult(changedPoms, errors, null);
+        }
+        return new UpdateResult(changedPoms, errors, run(writes));
+    }
 
-                Model originalModel = project.getOriginalModel();
-                try {
-                    MavenXpp3Writer pomWriter = new MavenXpp3Writer();
-                    pomWriter.write(fileWriter, originalModel);
-                } finally {
-                    fileWriter.close();
+    /**
+     * Write poms with the release versions to the build directories of the modules to release, the poms in the working
+     * tree are not changed. The release poms keep their parent, which is looked up in the release poms or in the
+     * repository, and refer to the source and output directories of their modules. An aggregator listing all release
+     * poms is written to {@link Constants#RELEASE_REACTOR_POM} in the build directory of the root project.
+     *
+     * @param rootProject project the release is run from.
+     * @return the written poms, including the aggregator, and the errors found.
+     */
+    public UpdateResult writeReleasePoms(MavenProject rootProject) {
+        final UpdateResult result = writeReleasePoms(PomUpdater::releasePom);
+        if (!result.success()) {
+            return result;
+        }
+        final File reactorPom = new File(rootProject.getBuild().getDirectory(), Constants.RELEASE_REACTOR_POM);
+        final List<File> writtenPoms = new ArrayList<>(result.alteredPoms);
+        writtenPoms.add(reactorPom);
+        try {
+            writeModel(reactorPom, reactorModel(rootProject, reactorPom.getParentFile(), result.alteredPoms));
+            return new UpdateResult(writtenPoms, result.dependencyErrors, null);
+        } catch (IOException e) {
+            return new UpdateResult(writtenPoms, result.dependencyErrors, e);
+        }
+    }
+
+    /**
+     * Write poms with the release versions to {@link Constants#IN_MEMORY_RELEASE_POM} in the base directories of the
+     * modules to release, to be installed and deployed instead of the poms in the working tree.
+     *
+     * @return the written poms and the errors found.
+     */
+    public UpdateResult writeReleasePomsToBaseDirectories() {
+        return writeReleasePoms(project -> new File(project.getBasedir(), Constants.IN_MEMORY_RELEASE_POM));
+    }
+
+    private UpdateResult writeReleasePoms(Function<MavenProject, File> location) {
+        List<File> releasePoms = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        final List<Callable<Void>> writes = new ArrayList<>();
+        for (ReleasableModule module : modulesToRelease()) {
+            try {
+                MavenProject project = module.getProject();
+                final ImmutableFixVersion version = module.getImmutableModule().getVersion();
+                log.info("Going to release " + module.getProject().getArtifactId() + " " + version.toString());
+
+                errors.addAll(alterModel(project, version.toString(), new PomVersionRewriter(version.toString())));
+
+                final File releasePom = location.apply(project);
+                final Model releaseModel = releaseModel(project, releasePom.getParentFile(), location);
+                releasePoms.add(releasePom);
+                writes.add(() -> {
+                    writeModel(releasePom, releaseModel);
+                    return null;
+                });
+            } catch (Exception e) {
+                return new UpdateResult(releasePoms, errors, e);
+            }
+        }
+        if (!errors.isEmpty()) {
+            return new UpdateResult(releasePoms, errors, null);
+        }
+        return new UpdateResult(releasePoms, errors, run(writes));
+    }
+
+    private List<ReleasableModule> modulesToRelease() {
+        return reactor.getModulesInBuildOrder().stream().filter(ReleasableModule::isToBeReleased)
+                      .collect(Collectors.toList());
+    }
+
+    private static File releasePom(MavenProject project) {
+        return new File(project.getBuild().getDirectory(), Constants.RELEASE_POM);
+    }
+
+    /**
+     * @param project project with the release versions set in its original model.
+     * @param directory directory the release pom is written to.
+     * @param location location of the release pom of a project.
+     * @return the original model, relocated to the directory.
+     */
+    private Model releaseModel(MavenProject project, File directory, Function<MavenProject, File> location) {
+        final Model model = project.getOriginalModel().clone();
+        model.setModules(new ArrayList<>());
+        model.getProfiles().forEach(profile -> profile.setModules(new ArrayList<>()));
+        final Parent parent = model.getParent();
+        if (parent != null) {
+            parent.setRelativePath(parentReleasePom(parent, location).map(pom -> relativePath(directory, pom))
+                                                                     .orElse(""));
+        }
+        if ("pom".equals(project.getPackaging()) || directory.equals(project.getBasedir())) {
+            // the build directories of a parent would be inherited by its children, next to the pom they are valid
+            return model;
+        }
+        final Build effective = project.getBuild();
+        final Build build = model.getBuild() == null
+                            ? new Build()
+                            : model.getBuild();
+        build.setDirectory(relativePath(directory, project, effective.getDirectory()));
+        build.setOutputDirectory(relativePath(directory, project, effective.getOutputDirectory()));
+        build.setTestOutputDirectory(relativePath(directory, project, effective.getTestOutputDirectory()));
+        build.setSourceDirectory(relativePath(directory, project, effective.getSourceDirectory()));
+        build.setTestSourceDirectory(relativePath(directory, project, effective.getTestSourceDirectory()));
+        build.setScriptSourceDirectory(relativePath(directory, project, effective.getScriptSourceDirectory()));
+        build.setResources(relocate(directory, project, effective.getResources()));
+        build.setTestResources(relocate(directory, project, effective.getTestResources()));
+        build.setFilters(effective.getFilters().stream().map(filter -> relativePath(directory, project, filter))
+                                  .collect(Collectors.toList()));
+        model.setBuild(build);
+        return model;
+    }
+
+    private Optional<File> parentReleasePom(Parent parent, Function<MavenProject, File> location) {
+        try {
+            final ReleasableModule parentModule = reactor.find(parent.getGroupId(), parent.getArtifactId());
+            return parentModule.isToBeReleased()
+                   ? Optional.of(location.apply(parentModule.getProject()))
+                   : Optional.empty();
+        } catch (UnresolvedSnapshotDependencyException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Model reactorModel(MavenProject rootProject, File directory, List<File> releasePoms) {
+        final Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId(rootProject.getGroupId());
+        model.setArtifactId(rootProject.getArtifactId() + "-release-reactor");
+        model.setVersion(rootProject.getVersion());
+        model.setPackaging("pom");
+        model.addProperty("maven.install.skip", "true");
+        model.addProperty("maven.deploy.skip", "true");
+        releasePoms.forEach(pom -> model.addModule(relativePath(directory, pom)));
+        return model;
+    }
+
+    private static List<Resource> relocate(File directory, MavenProject project, List<Resource> resources) {
+        return resources.stream().map(resource -> {
+            final Resource relocated = resource.clone();
+            relocated.setDirectory(relativePath(directory, project, resource.getDirectory()));
+            return relocated;
+        }).collect(Collectors.toList());
+    }
+
+    private static String relativePath(File directory, MavenProject project, String path) {
+        if (path == null) {
+            return null;
+        }
+        final File file = new File(path);
+        return relativePath(directory, file.isAbsolute()
+                                       ? file
+                                       : new File(project.getBasedir(), path));
+    }
+
+    private static String relativePath(File directory, File file) {
+        final String path = directory.toPath().toAbsolutePath().normalize()
+                                     .relativize(file.toPath().toAbsolutePath().normalize()).toString();
+        return path.isEmpty()
+               ? "."
+               : path.replace(File.separatorChar, '/');
+    }
+
+    private static void writeModel(File pom, Model model) throws IOException {
+        FileUtils.forceMkdirParent(pom);
+        try (Writer writer = WriterFactory.newXmlWriter(pom)) {
+            new MavenXpp3Writer().write(writer, model);
+        }
+    }
+
+    /**
+     * @return the first exception thrown while writing a pom, null if all poms were written.
+     */
+    private Exception run(List<Callable<Void>> writes) {
+        if (threads == 1 || writes.size() <= 1) {
+            try {
+                for (Callable<Void> write : writes) {
+                    write.call();
                 }
+                return null;
             } catch (Exception e) {
-                return new UpdateResult(changedPoms, errors, e);
+                return e;
             }
         }
-        return new UpdateResult(changedPoms, errors, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, writes.size()),
+                                                                      pomWriterThreadFactory());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> write : writes) {
+                futures.add(executor.submit(write));
+            }
+            Exception failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception
+                                  ? (Exception) e.getCause()
+                                  : e;
+                    }
+                }
+            }
+            return failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        } finally {
+            executor.shutdown();
+        }
     }
 
-    private List<String> alterModel(MavenProject project, String newVersion) {
+    private List<String> alterModel(MavenProject project, String newVersion, PomVersionRewriter rewriter) {
         Model originalModel = project.getOriginalModel();
         originalModel.setVersion(newVersion);
 
@@ -80,6 +316,7 @@ public class PomUpdater {
                 ReleasableModule parentBeingReleased = reactor.find(parent.getGroupId(), parent.getArtifactId());
                 final ImmutableFixVersion version = parentBeingReleased.getImmutableModule().getVersion();
                 originalModel.getParent().setVersion(version.toString());
+                rewriter.parentVersion(version.toString());
                 log.debug(
                     " Parent " + parentBeingReleased.getProject().getArtifactId() + " rewritten to version " + version
                                                                                                                    .toString());
@@ -98,6 +335,8 @@ public class PomUpdater {
                     final ImmutableFixVersion dependencyVersion = dependencyBeingReleased.getImmutableModule()
                                                                                          .getVersion();
                     dependency.setVersion(dependencyVersion.toString());
+                    rewriter.dependencyVersion(dependency.getGroupId(), dependency.getArtifactId(),
+                                               dependencyVersion.toString());
                     log.debug(" Dependency on " + dependencyBeingReleased.getProject()
                                                                          .getArtifactId() + " rewritten to version " + dependencyVersion
                                                                                                                            .toString());
@@ -131,6 +370,15 @@ public class PomUpdater {
         return (version != null && version.endsWith("-SNAPSHOT"));
     }
 
+    private static ThreadFactory pomWriterThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "release-pom-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     public static class UpdateResult {
         public final List<File>   alteredPoms;
         public final List<String> dependencyErrors;
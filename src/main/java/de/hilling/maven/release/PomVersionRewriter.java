@@ -0,0 +1,298 @@
+package de.hilling.maven.release;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
+
+/**
+ * Rewrites the version elements of a pom without reading it into a model.
+ * <p>
+ * The pom is streamed once to locate the text of the project version, the parent version and the versions of the
+ * given dependencies. Only these texts are replaced, all other characters, including formatting and comments, are
+ * written back unchanged. A project inheriting its version gets a version element after its artifact id.
+ * </p>
+ */
+class PomVersionRewriter {
+
+    private static final byte[]                       UTF8_BOM               = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+    private static final Set<String>                  DEPENDENCY_COORDINATES = new HashSet<>(
+        Arrays.asList("groupId", "artifactId", "version"));
+    /**
+     * Factories may reuse their readers, so each thread gets its own.
+     */
+    private static final ThreadLocal<XMLInputFactory> FACTORY                = ThreadLocal.withInitial(() -> {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+
+    private final String              projectVersion;
+    private final Map<String, String> dependencyVersions = new HashMap<>();
+    private       String              parentVersion;
+
+    /**
+     * @param projectVersion new version of the project.
+     */
+    PomVersionRewriter(String projectVersion) {
+        this.projectVersion = projectVersion;
+    }
+
+    /**
+     * @param version new version of the parent.
+     */
+    void parentVersion(String version) {
+        this.parentVersion = version;
+    }
+
+    /**
+     * @param groupId group id as written in the pom.
+     * @param artifactId artifact id as written in the pom.
+     * @param version new version of the dependency.
+     */
+    void dependencyVersion(String groupId, String artifactId, String version) {
+        dependencyVersions.put(groupId + ":" + artifactId, version);
+    }
+
+    /**
+     * Rewrite the versions in a pom file, keeping its encoding.
+     *
+     * @param pom pom to rewrite.
+     * @throws IOException if the pom cannot be read, parsed or written.
+     */
+    void rewrite(File pom) throws IOException {
+        final byte[] bytes = Files.readAllBytes(pom.toPath());
+        final String encoding;
+        final String content;
+        try (XmlStreamReader reader = ReaderFactory.newXmlReader(new ByteArrayInputStream(bytes))) {
+            encoding = reader.getEncoding();
+            content = IOUtil.toString(reader);
+        }
+        final String rewritten = rewrite(content);
+        if (rewritten.equals(content)) {
+            return;
+        }
+        final byte[] rewrittenBytes = rewritten.getBytes(encoding);
+        final boolean bom = hasUtf8Bom(bytes) && !hasUtf8Bom(rewrittenBytes);
+        final byte[] output = new byte[rewrittenBytes.length + (bom ? UTF8_BOM.length : 0)];
+        if (bom) {
+            System.arraycopy(UTF8_BOM, 0, output, 0, UTF8_BOM.length);
+        }
+        System.arraycopy(rewrittenBytes, 0, output, output.length - rewrittenBytes.length, rewrittenBytes.length);
+        Files.write(pom.toPath(), output);
+    }
+
+    /**
+     * @param content content of a pom.
+     * @return the content with the versions replaced.
+     * @throws IOException if the pom cannot be parsed.
+     */
+    String rewrite(String content) throws IOException {
+        final List<Edit> edits = new ArrayList<>();
+        final Deque<String> path = new ArrayDeque<>();
+        final Map<String, Text> dependency = new HashMap<>();
+        int artifactIdStart = -1;
+        int versionInsertion = -1;
+        boolean hasVersion = false;
+        try {
+            final XMLStreamReader reader = FACTORY.get().createXMLStreamReader(new StringReader(content));
+            try {
+                while (reader.hasNext()) {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        path.push(reader.getLocalName());
+                        final String current = currentPath(path);
+                        if (current.equals("project/artifactId")) {
+                            artifactIdStart = startTag(content, reader);
+                        } else if (current.equals("project/version")) {
+                            hasVersion = true;
+                            edits.add(new Edit(text(content, reader), projectVersion));
+                            path.pop();
+                        } else if (current.equals("project/parent/version") && parentVersion != null) {
+                            edits.add(new Edit(text(content, reader), parentVersion));
+                            path.pop();
+                        } else if (current.startsWith("project/dependencies/dependency/") && path.size() == 4
+                                   && DEPENDENCY_COORDINATES.contains(reader.getLocalName())) {
+                            dependency.put(reader.getLocalName(), text(content, reader));
+                            path.pop();
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        final String current = currentPath(path);
+                        if (current.equals("project/artifactId")) {
+                            versionInsertion = endTag(content, reader);
+                        } else if (current.equals("project/dependencies/dependency")) {
+                            dependencyEdit(dependency).ifPresent(edits::add);
+                            dependency.clear();
+                        }
+                        path.pop();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("unable to parse pom: " + e.getMessage(), e);
+        }
+        if (!hasVersion) {
+            if (artifactIdStart < 0 || versionInsertion < 0) {
+                throw new IOException("unable to locate the artifact id of the project");
+            }
+            final String lineSeparator = content.contains("\r\n")
+                                         ? "\r\n"
+                                         : "\n";
+            final String element = lineSeparator + indentation(content, artifactIdStart) + "<version>" +
+                                   projectVersion + "</version>";
+            edits.add(new Edit(new Text(versionInsertion, versionInsertion, ""), element));
+        }
+        edits.sort((first, second) -> Integer.compare(first.text.start, second.text.start));
+        final StringBuilder rewritten = new StringBuilder(content.length() + 64);
+        int copied = 0;
+        for (Edit edit : edits) {
+            rewritten.append(content, copied, edit.text.start).append(edit.replacement);
+            copied = edit.text.end;
+        }
+        return rewritten.append(content, copied, content.length()).toString();
+    }
+
+    private Optional<Edit> dependencyEdit(Map<String, Text> dependency) {
+        final Text groupId = dependency.get("groupId");
+        final Text artifactId = dependency.get("artifactId");
+        final Text version = dependency.get("version");
+        if (groupId == null || artifactId == null || version == null) {
+            return Optional.empty();
+        }
+        final String newVersion = dependencyVersions.get(groupId.value + ":" + artifactId.value);
+        return newVersion == null
+               ? Optional.empty()
+               : Optional.of(new Edit(version, newVersion));
+    }
+
+    private static String currentPath(Deque<String> path) {
+        final StringBuilder current = new StringBuilder();
+        path.descendingIterator().forEachRemaining(name -> {
+            if (current.length() > 0) {
+                current.append('/');
+            }
+            current.append(name);
+        });
+        return current.toString();
+    }
+
+    /**
+     * Locate the text of the current element, consuming the element. Depending on the StAX implementation, the location
+     * of an event is either its first character or the character following it, so the tags are searched around it.
+     */
+    private static Text text(String content, XMLStreamReader reader) throws XMLStreamException, IOException {
+        final int tagStart = startTag(content, reader);
+        final String value = reader.getElementText().trim();
+        final int tagEnd = content.indexOf('>', tagStart) + 1;
+        final int textEnd = content.indexOf('<', tagEnd);
+        if (content.charAt(tagEnd - 2) == '/' || textEnd < 0
+            || !content.substring(tagEnd, textEnd).trim().equals(value)) {
+            throw new IOException("unable to locate the text of " + reader.getLocalName() + " in line "
+                                  + reader.getLocation().getLineNumber());
+        }
+        int start = tagEnd;
+        while (start < textEnd && Character.isWhitespace(content.charAt(start))) {
+            start++;
+        }
+        int end = textEnd;
+        while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+            end--;
+        }
+        return new Text(start, end, value);
+    }
+
+    private static int startTag(String content, XMLStreamReader reader) throws IOException {
+        return findTag(content, reader, "<" + qualifiedName(reader));
+    }
+
+    /**
+     * @return the index following the end tag of the current element.
+     */
+    private static int endTag(String content, XMLStreamReader reader) throws IOException {
+        return content.indexOf('>', findTag(content, reader, "</" + qualifiedName(reader))) + 1;
+    }
+
+    private static int findTag(String content, XMLStreamReader reader, String tag) throws IOException {
+        final int location = location(reader);
+        final int tagStart = content.startsWith(tag, location)
+                             ? location
+                             : content.lastIndexOf(tag, location - 1);
+        if (tagStart < 0) {
+            throw new IOException("unable to locate " + tag + "> in line " + reader.getLocation().getLineNumber());
+        }
+        return tagStart;
+    }
+
+    private static int location(XMLStreamReader reader) throws IOException {
+        final int location = reader.getLocation().getCharacterOffset();
+        if (location < 0) {
+            throw new IOException("the StAX implementation does not report character offsets");
+        }
+        return location;
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        final String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty()
+               ? reader.getLocalName()
+               : prefix + ":" + reader.getLocalName();
+    }
+
+    private static String indentation(String content, int tagStart) {
+        final int lineStart = content.lastIndexOf('\n', tagStart - 1) + 1;
+        final String indentation = content.substring(lineStart, tagStart);
+        return indentation.trim().isEmpty()
+               ? indentation
+               : "";
+    }
+
+    private static boolean hasUtf8Bom(byte[] bytes) {
+        return bytes.length >= UTF8_BOM.length && bytes[0] == UTF8_BOM[0] && bytes[1] == UTF8_BOM[1]
+               && bytes[2] == UTF8_BOM[2];
+    }
+
+    private static final class Text {
+        private final int    start;
+        private final int    end;
+        private final String value;
+
+        private Text(int start, int end, String value) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+        }
+    }
+
+    private static final class Edit {
+        private final Text   text;
+        private final String replacement;
+
+        private Edit(Text text, String replacement) {
+            this.text = text;
+            this.replacement = replacement;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package de.hilling.maven.release;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -13,21 +17,19 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import de.hilling.maven.release.exceptions.UnresolvedSnapshotDependencyException;
 import de.hilling.maven.release.exceptions.ValidationException;
 import de.hilling.maven.release.repository.LocalGitRepo;
-import de.hilling.maven.release.versioning.ImmutableQualifiedArtifact;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
 import de.hilling.maven.release.versioning.ReleaseInfo;
+import de.hilling.maven.release.versioning.VersionNamer;
 
 public class Reactor {
 
-    private final List<ReleasableModule> modulesInBuildOrder;
-    private final Map<ImmutableQualifiedArtifact, ReleasableModule> artifactModuleMap = new HashMap<>();
+    private final List<ReleasableModule>        modulesInBuildOrder;
+    private final Map<String, ReleasableModule> artifactModuleMap = new HashMap<>();
 
     public Reactor(List<ReleasableModule> modulesInBuildOrder) {
         this.modulesInBuildOrder = modulesInBuildOrder;
-        modulesInBuildOrder.forEach(m -> {
-            final ImmutableQualifiedArtifact key = ImmutableQualifiedArtifact.builder().artifactId(
-                m.getProject().getArtifactId()).groupId(m.getProject().getGroupId()).build();
-            artifactModuleMap.put(key, m);
-        });
+        modulesInBuildOrder.forEach(m -> artifactModuleMap.put(
+            ReactorIndex.coordinates(m.getProject().getGroupId(), m.getProject().getArtifactId()), m));
     }
 
     public List<ReleasableModule> getModulesInBuildOrder() {
@@ -37,17 +39,43 @@ public class Reactor {
     public static Reactor fromProjects(Log log, LocalGitRepo gitRepo, MavenProject rootProject,
                                        List<MavenProject> projects, List<String> modulesToForceRelease,
                                        NoChangesAction actionWhenNoChangesDetected, boolean bugfixRelease,
-                                       ReleaseInfo previousRelease)
+                                       ReleaseInfo previousRelease, boolean compareTrees, int detectionThreads)
         throws ValidationException, GitAPIException, MojoExecutionException {
         if (previousRelease.isEmpty()) {
             log.warn("no info file for previous releases found, assuming initial release");
         }
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(gitRepo.git.getRepository(), log);
+        final ReactorIndex index = ReactorIndex.of(rootProject, projects, previousRelease);
+        try (ModuleChanges moduleChanges = new ModuleChanges(gitRepo, index.paths(), compareTrees, detectionThreads,
+                                                             log)) {
+            moduleChanges.prefetch(tagsToCheck(index, modulesToForceRelease));
+            return fromVerifiers(log, index, modulesToForceRelease, actionWhenNoChangesDetected, bugfixRelease,
+                                 previousRelease, moduleChanges);
+        }
+    }
+
+    /**
+     * Determine the modules to release in a single pass in build order. A released module marks the modules depending
+     * on it or inheriting from it, which come later in the build order, so they are released without detecting their
+     * changes. The pass runs sequentially, only the change detection itself may already be running in the background.
+     */
+    private static Reactor fromVerifiers(Log log, ReactorIndex index, List<String> modulesToForceRelease,
+                                         NoChangesAction actionWhenNoChangesDetected, boolean bugfixRelease,
+                                         ReleaseInfo previousRelease, ModuleChanges moduleChanges)
+        throws ValidationException, MojoExecutionException {
+        final VersionNamer versionNamer = new VersionNamer(bugfixRelease, previousRelease);
+        final List<ModuleDependencyVerifier> verifiers = new ArrayList<>();
+        for (MavenProject project : index.projects()) {
+            verifiers.add(new ModuleDependencyVerifier(project, index, moduleChanges, versionNamer,
+                                                       modulesToForceRelease, log));
+        }
         List<ReleasableModule> modules = new ArrayList<>();
-        for (MavenProject project : projects) {
-            modules.add(new ModuleDependencyVerifier(project, rootProject, gitRepo, previousRelease,
-                                                     modulesToForceRelease,
-                                                     modules, bugfixRelease, log).releaseInfo());
+        final Set<MavenProject> dependencyChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ModuleDependencyVerifier verifier : verifiers) {
+            final ReleasableModule module = verifier.releaseInfo(dependencyChanged.contains(verifier.getProject()));
+            modules.add(module);
+            if (module.isToBeReleased()) {
+                dependencyChanged.addAll(index.dependents(verifier.getProject()));
+            }
         }
 
         if (!atLeastOneBeingReleased(modules)) {
@@ -60,10 +88,8 @@ public class Reactor {
                 default:
                     log.warn("No changes have been detected in any modules so will re-release them all");
                     modules.clear();
-                    for (MavenProject project : projects) {
-                        modules.add(new ModuleDependencyVerifier(project, rootProject, gitRepo, previousRelease,
-                                                                 modulesToForceRelease,
-                                                                 modules, bugfixRelease, log).rereleaseModule());
+                    for (ModuleDependencyVerifier verifier : verifiers) {
+                        modules.add(verifier.rereleaseModule());
                     }
 
             }
@@ -72,6 +98,24 @@ public class Reactor {
         return new Reactor(modules);
     }
 
+    /**
+     * @return tags of previous releases the history has to be checked against, modules with a recorded fingerprint
+     * or a forced release don't need them.
+     */
+    private static Set<String> tagsToCheck(ReactorIndex index, List<String> modulesToForceRelease) {
+        final Set<String> tags = new LinkedHashSet<>();
+        for (MavenProject project : index.projects()) {
+            if (modulesToForceRelease.contains(project.getArtifactId())) {
+                continue;
+            }
+            index.previousVersion(project)
+                 .filter(version -> !version.getFingerprint().isPresent())
+                 .map(ImmutableModuleVersion::getReleaseTag)
+                 .ifPresent(tags::add);
+        }
+        return tags;
+    }
+
     private static boolean atLeastOneBeingReleased(List<ReleasableModule> modules) {
         for (ReleasableModule module : modules) {
             if (module.isToBeReleased()) {
@@ -82,12 +126,10 @@ public class Reactor {
     }
 
     public ReleasableModule find(String groupId, String artifactId) throws UnresolvedSnapshotDependencyException {
-        final ImmutableQualifiedArtifact artifact = ImmutableQualifiedArtifact.builder().groupId(groupId)
-                                                                           .artifactId(artifactId).build();
-        if (artifactModuleMap.containsKey(artifact)) {
-            return artifactModuleMap.get(artifact);
-        } else {
+        final ReleasableModule module = artifactModuleMap.get(ReactorIndex.coordinates(groupId, artifactId));
+        if (module == null) {
             throw new UnresolvedSnapshotDependencyException(groupId, artifactId);
         }
+        return module;
     }
 }
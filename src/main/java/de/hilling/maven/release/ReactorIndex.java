@@ -0,0 +1,158 @@
+package de.hilling.maven.release;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.lib.Repository;
+
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+import de.hilling.maven.release.versioning.ReleaseInfo;
+
+/**
+ * Index of the projects in the reactor, built once per release and shared by all stages. It maps the coordinates to
+ * the modules and holds the relative path, the previous release, the parent and the dependencies within the reactor
+ * of each module, so none of them is searched for or computed again per module. The reverse edges, from each module
+ * to the modules depending on it or inheriting from it, are kept as well.
+ */
+final class ReactorIndex {
+
+    private final List<MavenProject>                    projects;
+    private final Map<String, MavenProject>             byCoordinates    = new HashMap<>();
+    private final Map<MavenProject, String>             paths            = new IdentityHashMap<>();
+    private final Map<MavenProject, MavenProject>       parents          = new IdentityHashMap<>();
+    private final Map<MavenProject, List<MavenProject>> dependencies     = new IdentityHashMap<>();
+    private final Map<MavenProject, Set<MavenProject>>  dependents       = new IdentityHashMap<>();
+    private final Map<String, ImmutableModuleVersion>   previousVersions = new HashMap<>();
+
+    private ReactorIndex(List<MavenProject> projects) {
+        this.projects = Collections.unmodifiableList(new ArrayList<>(projects));
+    }
+
+    /**
+     * @param rootProject project the release is run from.
+     * @param projects projects in the reactor, in build order.
+     * @param previousRelease release info of the previous release.
+     * @return the index of the projects.
+     * @throws MojoExecutionException if the directory of a project cannot be resolved.
+     */
+    static ReactorIndex of(MavenProject rootProject, List<MavenProject> projects, ReleaseInfo previousRelease)
+        throws MojoExecutionException {
+        final ReactorIndex index = new ReactorIndex(projects);
+        final File projectRoot = canonicalBasedir(rootProject);
+        for (MavenProject project : projects) {
+            index.paths.put(project, modulePath(projectRoot, project));
+            index.byCoordinates.put(coordinates(project.getGroupId(), project.getArtifactId()), project);
+        }
+        for (ImmutableModuleVersion module : previousRelease.getModules()) {
+            index.previousVersions.putIfAbsent(
+                coordinates(module.getArtifact().getGroupId(), module.getArtifact().getArtifactId()), module);
+        }
+        for (MavenProject project : projects) {
+            final MavenProject parent = project.getParent();
+            if (parent != null) {
+                index.find(parent.getGroupId(), parent.getArtifactId()).ifPresent(
+                    reactorParent -> index.parents.put(project, reactorParent));
+            }
+            final Set<MavenProject> reactorDependencies = new LinkedHashSet<>();
+            for (Dependency dependency : project.getModel().getDependencies()) {
+                index.find(dependency.getGroupId(), dependency.getArtifactId()).filter(module -> module != project)
+                     .ifPresent(reactorDependencies::add);
+            }
+            index.dependencies.put(project, Collections.unmodifiableList(new ArrayList<>(reactorDependencies)));
+            index.parent(project).ifPresent(reactorDependencies::add);
+            reactorDependencies.forEach(
+                dependency -> index.dependents.computeIfAbsent(dependency, key -> new LinkedHashSet<>()).add(project));
+        }
+        return index;
+    }
+
+    /**
+     * @return key of a module in maps by coordinates.
+     */
+    static String coordinates(String groupId, String artifactId) {
+        return groupId + ":" + artifactId;
+    }
+
+    /**
+     * @return the projects in build order.
+     */
+    List<MavenProject> projects() {
+        return projects;
+    }
+
+    Optional<MavenProject> find(String groupId, String artifactId) {
+        return Optional.ofNullable(byCoordinates.get(coordinates(groupId, artifactId)));
+    }
+
+    /**
+     * @return path of the module relative to the root project, "." for the root project itself.
+     */
+    String path(MavenProject project) {
+        return paths.get(project);
+    }
+
+    /**
+     * @return paths of all modules in build order.
+     */
+    List<String> paths() {
+        final List<String> modulePaths = new ArrayList<>(projects.size());
+        projects.forEach(project -> modulePaths.add(paths.get(project)));
+        return modulePaths;
+    }
+
+    /**
+     * @return the version of the module in the previous release, empty if it has not been released yet.
+     */
+    Optional<ImmutableModuleVersion> previousVersion(MavenProject project) {
+        return Optional.ofNullable(previousVersions.get(coordinates(project.getGroupId(), project.getArtifactId())));
+    }
+
+    /**
+     * @return the parent of the module if it is part of the reactor.
+     */
+    Optional<MavenProject> parent(MavenProject project) {
+        return Optional.ofNullable(parents.get(project));
+    }
+
+    /**
+     * @return the modules of the reactor the module declares dependencies on, without its parent.
+     */
+    List<MavenProject> dependencies(MavenProject project) {
+        return dependencies.getOrDefault(project, Collections.emptyList());
+    }
+
+    /**
+     * @return the modules of the reactor that declare a dependency on the module or have it as parent.
+     */
+    Set<MavenProject> dependents(MavenProject project) {
+        return Collections.unmodifiableSet(dependents.getOrDefault(project, Collections.emptySet()));
+    }
+
+    private static File canonicalBasedir(MavenProject project) throws MojoExecutionException {
+        // Getting canonical files because on Windows, it's possible one returns "C:\..." and the other "c:\..." which is rather amazing
+        try {
+            return project.getBasedir().getCanonicalFile();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not find directory paths for maven project", e);
+        }
+    }
+
+    private static String modulePath(File projectRoot, MavenProject project) throws MojoExecutionException {
+        final String relativePathToModule = Repository.stripWorkDir(projectRoot, canonicalBasedir(project));
+        return relativePathToModule.isEmpty()
+               ? "."
+               : relativePathToModule;
+    }
+}
@@ -0,0 +1,264 @@
+package de.hilling.maven.release;
+
+import static de.hilling.maven.release.utils.GitHelper.getRemoteUrlOrNullIfNoneSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Parent;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import de.hilling.maven.release.exceptions.ValidationException;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoLayout;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.GitContext;
+import de.hilling.maven.release.repository.LocalGitRepo;
+import de.hilling.maven.release.utils.Constants;
+import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
+import de.hilling.maven.release.versioning.ReleaseInfo;
+
+/**
+ * Releases the changed modules in a single build, e.g. {@code mvn deploy -DinMemoryRelease=true}.
+ * <p>
+ * After the projects are read, the modules to release are determined like by the prepare goal, the release info is
+ * committed and the repository is tagged. The release versions are then set on the in-memory models of the released
+ * modules, and the build is restricted to them. The poms in the working tree are not changed, the poms installed and
+ * deployed are written to {@link Constants#IN_MEMORY_RELEASE_POM} next to them and deleted after the build.
+ * </p>
+ * <p>
+ * The participant requires the plugin to be declared with {@code <extensions>true</extensions>}. It is only active
+ * with the property {@code inMemoryRelease=true}. The parameters of the prepare goal are read from the user
+ * properties, the properties of the root project and the configuration of the plugin in the root project, in this
+ * order. The configuration of executions is not read, and {@code releasePoms=BuildDirectory} is rejected, as the
+ * release poms are always written next to the poms.
+ * </p>
+ */
+public class ReleaseLifecycleParticipant extends AbstractMavenLifecycleParticipant {
+
+    static final String IN_MEMORY_RELEASE = "inMemoryRelease";
+    static final String RELEASE_POMS      = "releasePoms";
+
+    private final List<File>             releasePoms = new ArrayList<>();
+    private       Logger                 logger;
+    private       ReleaseWorkspaceReader workspaceReader;
+
+    @Override
+    public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
+        if (!Boolean.parseBoolean(property(session, IN_MEMORY_RELEASE, "false"))) {
+            return;
+        }
+        final Log log = new DefaultLog(logger);
+        final MavenProject rootProject = session.getTopLevelProject();
+        try {
+            if (!Boolean.parseBoolean(property(session, "disableSshAgent", "false"))) {
+                BaseMojo.configureJsch(log, session.getSettings(), property(session, "serverId", null),
+                                       property(session, "knownHosts", null), property(session, "privateKey", null),
+                                       property(session, "passphrase", null));
+            }
+            final String packedGitLimit = property(session, "packedGitLimit", null);
+            final String deltaBaseCacheLimit = property(session, "deltaBaseCacheLimit", null);
+            final String packedGitMMAP = property(session, "packedGitMMAP", null);
+            GitContext.configureWindowCache(packedGitLimit == null ? null : Long.valueOf(packedGitLimit),
+                                            deltaBaseCacheLimit == null ? null : Integer.valueOf(deltaBaseCacheLimit),
+                                            packedGitMMAP == null ? null : Boolean.valueOf(packedGitMMAP));
+            final LocalGitRepo repo = LocalGitRepo.fromCurrentDir(
+                getRemoteUrlOrNullIfNoneSet(rootProject.getOriginalModel().getScm(), rootProject.getModel().getScm()),
+                log);
+            repo.setRemoteTagCacheTtl(Long.parseLong(property(session, "remoteTagCacheTtl", "3600")));
+            try {
+                release(session, rootProject, repo, log);
+            } finally {
+                repo.context().close();
+            }
+        } catch (ValidationException e) {
+            e.getMessages().forEach(log::error);
+            throw new MavenExecutionException(e.getMessage(), e);
+        } catch (GitAPIException | MojoExecutionException e) {
+            throw new MavenExecutionException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        releasePoms.forEach(FileUtils::deleteQuietly);
+        releasePoms.clear();
+    }
+
+    private void release(MavenSession session, MavenProject rootProject, LocalGitRepo repo, Log log)
+        throws MojoExecutionException, GitAPIException {
+        if (ReleasePoms.valueOf(property(session, RELEASE_POMS, "WorkingTree")) != ReleasePoms.WorkingTree) {
+            throw new MojoExecutionException(RELEASE_POMS + " cannot be used with " + IN_MEMORY_RELEASE
+                                             + ", the release poms are written next to the poms");
+        }
+        final String threads = property(session, "detectionThreads", null);
+        final int detectionThreads = threads == null
+                                     ? Runtime.getRuntime().availableProcessors()
+                                     : Integer.parseInt(threads);
+        ReleaseMojo.errorIfNotClean(repo, session.getProjects(),
+                                    CleanCheck.valueOf(property(session, "cleanCheck", "Full")),
+                                    listProperty(session, "cleanCheckExcludes"),
+                                    Boolean.parseBoolean(property(session, "trustIndexStat", "false")),
+                                    detectionThreads);
+        final ReleaseInfoLayout layout = ReleaseInfoLayout.valueOf(property(session, "releaseInfoLayout", "File"));
+        final ReleaseInfoStorage infoStorage = new ReleaseInfoStorage(
+            rootProject.getBasedir(), repo.git, Boolean.parseBoolean(property(session, "compactReleaseInfo", "false")),
+            layout);
+        final ReleaseInfo previousRelease = BaseMojo.loadReleaseInfo(
+            log, infoStorage, repo, Boolean.parseBoolean(property(session, "releaseInfoFromTag", "false")));
+        log.info("previous release: " + previousRelease);
+
+        final Reactor reactor = Reactor.fromProjects(log, repo, rootProject, session.getProjects(),
+                                                     listProperty(session, "forceRelease"),
+                                                     NoChangesAction.valueOf(
+                                                         property(session, "noChangesAction", "ReleaseAll")),
+                                                     Boolean.parseBoolean(property(session, "bugfixRelease", "false")),
+                                                     previousRelease,
+                                                     Boolean.parseBoolean(property(session, "compareTrees", "false")),
+                                                     detectionThreads);
+        if (reactor == null) {
+            // an empty build is an error in maven, so only the root project is validated
+            log.info("Nothing to release, only " + rootProject.getArtifactId() + " is validated.");
+            session.setProjects(Collections.singletonList(rootProject));
+            session.getRequest().setGoals(Collections.singletonList("validate"));
+            return;
+        }
+
+        final ImmutableReleaseInfo currentRelease = ReleaseMojo.storeRelease(log, repo, rootProject.getBasedir(),
+                                                                             infoStorage, reactor,
+                                                                             layout != ReleaseInfoLayout.Notes);
+        final PomUpdater.UpdateResult result = new PomUpdater(log, reactor, detectionThreads)
+                                                   .writeReleasePomsToBaseDirectories();
+        releasePoms.addAll(result.alteredPoms);
+        if (!result.success()) {
+            afterSessionEnd(session);
+            throw ReleaseMojo.updateFailure(result);
+        }
+        ReleaseMojo.tagRepo(log, repo, currentRelease);
+
+        final List<MavenProject> releasedProjects = setReleaseVersions(reactor);
+        workspaceReader.setReleasedProjects(releasedProjects);
+        session.setProjects(releasedProjects);
+        log.info("Building the released modules: " + releasedProjects.stream().map(MavenProject::getArtifactId)
+                                                                          .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Set the release versions on the models of the released projects, and the versions of the reactor modules they
+     * depend on: the release version of released modules, the previous release version of all others.
+     *
+     * @return the released projects in build order.
+     */
+    private static List<MavenProject> setReleaseVersions(Reactor reactor) {
+        final Map<String, String> versions = new HashMap<>();
+        for (ReleasableModule module : reactor.getModulesInBuildOrder()) {
+            final MavenProject project = module.getProject();
+            versions.put(key(project.getGroupId(), project.getArtifactId(), project.getVersion()),
+                         module.getImmutableModule().getVersion().toString());
+        }
+        final List<MavenProject> releasedProjects = new ArrayList<>();
+        for (ReleasableModule module : reactor.getModulesInBuildOrder()) {
+            if (!module.isToBeReleased()) {
+                continue;
+            }
+            final MavenProject project = module.getProject();
+            final String snapshotVersion = project.getVersion();
+            final String version = module.getImmutableModule().getVersion().toString();
+            project.setVersion(version);
+            project.getArtifact().setVersion(version);
+            final Build build = project.getBuild();
+            if (build.getFinalName() != null) {
+                build.setFinalName(build.getFinalName().replace(snapshotVersion, version));
+            }
+            final Parent parent = project.getModel().getParent();
+            if (parent != null) {
+                parent.setVersion(versions.getOrDefault(
+                    key(parent.getGroupId(), parent.getArtifactId(), parent.getVersion()), parent.getVersion()));
+            }
+            setVersions(project.getDependencies(), versions);
+            if (project.getDependencyManagement() != null) {
+                setVersions(project.getDependencyManagement().getDependencies(), versions);
+            }
+            project.setFile(new File(project.getBasedir(), Constants.IN_MEMORY_RELEASE_POM));
+            releasedProjects.add(project);
+        }
+        return releasedProjects;
+    }
+
+    private static void setVersions(List<Dependency> dependencies, Map<String, String> versions) {
+        for (Dependency dependency : dependencies) {
+            final String version = versions.get(
+                key(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()));
+            if (version != null) {
+                dependency.setVersion(version);
+            }
+        }
+    }
+
+    private static String key(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    private static List<String> listProperty(MavenSession session, String name) {
+        final String value = property(session, name, "");
+        return value.isEmpty()
+               ? Collections.emptyList()
+               : Arrays.asList(value.split(","));
+    }
+
+    /**
+     * Read a parameter like the goals of the plugin, but with the properties overriding the configuration.
+     *
+     * @param session session.
+     * @param name name of the parameter.
+     * @param defaultValue value if the parameter is not set.
+     * @return value of the user property, the property of the root project or the plugin configuration in the root
+     * project. The values of list parameters are separated by commas.
+     */
+    static String property(MavenSession session, String name, String defaultValue) {
+        final String value = session.getUserProperties().getProperty(name);
+        if (value != null) {
+            return value;
+        }
+        final MavenProject rootProject = session.getTopLevelProject();
+        final String projectValue = rootProject.getProperties().getProperty(name);
+        if (projectValue != null) {
+            return projectValue;
+        }
+        final Xpp3Dom configuration = rootProject.getBuildPlugins().stream()
+                                                 .filter(PomUpdater::isMultiModuleReleasePlugin)
+                                                 .map(plugin -> (Xpp3Dom) plugin.getConfiguration())
+                                                 .filter(Objects::nonNull)
+                                                 .map(dom -> dom.getChild(name))
+                                                 .filter(Objects::nonNull)
+                                                 .findFirst().orElse(null);
+        if (configuration == null) {
+            return defaultValue;
+        }
+        if (configuration.getChildCount() > 0) {
+            return Arrays.stream(configuration.getChildren()).map(Xpp3Dom::getValue).map(String::trim)
+                         .collect(Collectors.joining(","));
+        }
+        return configuration.getValue() == null
+               ? defaultValue
+               : configuration.getValue().trim();
+    }
+}
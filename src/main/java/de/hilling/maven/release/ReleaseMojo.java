@@ -3,23 +3,32 @@ package de.hilling.maven.release;
 import static de.hilling.maven.release.Reactor.fromProjects;
 import static java.util.stream.Collectors.joining;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.model.Scm;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 import org.eclipse.jgit.api.errors.GitAPIException;
 
 import de.hilling.maven.release.exceptions.ValidationException;
+import de.hilling.maven.release.releaseinfo.ReleaseHistory;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoLayout;
 import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
 import de.hilling.maven.release.repository.LocalGitRepo;
 import de.hilling.maven.release.utils.Constants;
 import de.hilling.maven.release.utils.ReleaseFileUtils;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
 import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
 import de.hilling.maven.release.versioning.ReleaseDateSingleton;
 import de.hilling.maven.release.versioning.ReleaseInfo;
@@ -34,8 +43,11 @@ import de.hilling.maven.release.versioning.ReleaseInfo;
  *     version information in <code>.release-info.json</code></li>
  *     <li>The corresponding poms are updated and the list of modules to build is
  *      stored in <code>modules-to-build.txt</code></li>
+ *     <li>The released modules are appended to the release history in <code>.release-history.jsonl</code></li>
  *     <li>All files that should be cleaned up/reverted later are stored in <code>files-to-revert.txt</code></li>
  *     <li>The cleanup-mojo should later be used to revert these files.</li>
+ *     <li>With {@code releasePoms=BuildDirectory}, release poms are written to the build directories instead, see
+ *     {@link PomUpdater#writeReleasePoms(MavenProject)}. Nothing needs to be reverted then.</li>
  * </ul>
  */
 @Mojo(name = "prepare",
@@ -44,73 +56,183 @@ import de.hilling.maven.release.versioning.ReleaseInfo;
       )
 public class ReleaseMojo extends BaseMojo {
 
+    /**
+     * Write {@code .release-info.json} without pretty printing. Recommended for projects with many thousand modules.
+     */
+    @Parameter(defaultValue = "false", alias = "compactReleaseInfo", property = "compactReleaseInfo")
+    protected boolean           compactReleaseInfo;
+    /**
+     * Layout of the release info. Possible values: {@code File} for a single {@code .release-info.json}, {@code Sharded}
+     * for one file per module below {@code .release-info/}, {@code Notes} for a git note of the released commit in
+     * {@code refs/notes/smart-release}. Only the files of released modules are rewritten in the sharded layout. No
+     * commit is made in the notes layout, and the release history is not written. The existing release info is read in
+     * any layout and converted on the next release.
+     */
+    @Parameter(defaultValue = "File", alias = "releaseInfoLayout", property = "releaseInfoLayout")
+    protected ReleaseInfoLayout releaseInfoLayout;
+    /**
+     * Part of the working tree that must be clean. Possible values: {@code Full} runs {@code git status} on the whole
+     * working tree, {@code Reactor} only checks the directories of the modules in the reactor, on
+     * {@code detectionThreads} threads.
+     */
+    @Parameter(defaultValue = "Full", alias = "cleanCheck", property = "cleanCheck")
+    protected CleanCheck        cleanCheck;
+    /**
+     * Patterns in {@code .gitignore} syntax, e.g. {@code node_modules/}, below which untracked and ignored files are
+     * not looked for by the {@code Reactor} clean check. Tracked files are still checked.
+     */
+    @Parameter(alias = "cleanCheckExcludes", property = "cleanCheckExcludes")
+    protected List<String>      cleanCheckExcludes;
+    /**
+     * Consider files unchanged whenever their size and modification time match the index in the {@code Reactor} clean
+     * check, without comparing the content of files modified shortly after the index was written.
+     */
+    @Parameter(defaultValue = "false", alias = "trustIndexStat", property = "trustIndexStat")
+    protected boolean           trustIndexStat;
+    /**
+     * Where the poms with the release versions are written. Possible values: {@code WorkingTree} overwrites the poms
+     * of the modules to release, which are reverted by the cleanup goal. {@code BuildDirectory} writes a
+     * {@code release-pom.xml} to the build directory of each module to release and an aggregator of them to
+     * {@code release-reactor/pom.xml} in the build directory of the root project, the working tree is not changed.
+     */
+    @Parameter(defaultValue = "WorkingTree", alias = "releasePoms", property = "releasePoms")
+    protected ReleasePoms       releasePoms;
+
     @Override
     public void executeConcreteMojo(Scm scm, Scm originalScm, LocalGitRepo repo) throws MojoExecutionException,
                                                                                         MojoFailureException,
                                                                                         GitAPIException {
-        repo.errorIfNotClean();
+        errorIfNotClean(repo, projects, cleanCheck, cleanCheckExcludes, trustIndexStat, detectionThreads());
 
-        final ReleaseInfoStorage infoStorage = new ReleaseInfoStorage(project.getBasedir(), repo.git);
-        ReleaseInfo previousRelease = infoStorage.load();
+        final ReleaseInfoStorage infoStorage = new ReleaseInfoStorage(project.getBasedir(), repo.git,
+                                                                       compactReleaseInfo, releaseInfoLayout);
+        ReleaseInfo previousRelease = loadReleaseInfo(infoStorage, repo);
         getLog().info("previous release: " + previousRelease);
 
         Reactor reactor = fromProjects(getLog(), repo, project, projects, modulesToForceRelease, noChangesAction,
-                                       bugfixRelease, previousRelease);
+                                       bugfixRelease, previousRelease, compareTrees, detectionThreads());
         if (reactor == null) {
             return;
         }
 
-        final List<ReleasableModule> releasableModules = reactor.getModulesInBuildOrder();
+        final ImmutableReleaseInfo currentRelease = storeRelease(getLog(), repo, project.getBasedir(), infoStorage,
+                                                                 reactor, releaseInfoLayout != ReleaseInfoLayout.Notes);
+
+        if (releasePoms == ReleasePoms.BuildDirectory) {
+            writeReleasePoms(reactor);
+        } else {
+            saveModulesToBuild(reactor);
+            saveFilesToRevert(repo, reactor);
+        }
+
+        tagRepo(getLog(), repo, currentRelease);
+    }
+
+    /**
+     * @param repo the repository.
+     * @param projects projects in the reactor.
+     * @param cleanCheck parts of the working tree to check.
+     * @param excludes patterns of untracked files not to look for, null for none.
+     * @param trustStat consider files unchanged if size and modification time match the index.
+     * @param threads number of threads to check the directories of the reactor with.
+     * @throws ValidationException if there are uncommitted changes.
+     * @throws GitAPIException on git exception.
+     */
+    static void errorIfNotClean(LocalGitRepo repo, List<MavenProject> projects, CleanCheck cleanCheck,
+                                List<String> excludes, boolean trustStat, int threads) throws ValidationException,
+                                                                                            GitAPIException {
+        if (cleanCheck == CleanCheck.Reactor) {
+            final List<File> directories = projects.stream().map(MavenProject::getBasedir).collect(Collectors.toList());
+            repo.errorIfNotClean(directories, excludes == null
+                                              ? Collections.emptyList()
+                                              : excludes, trustStat, threads);
+        } else {
+            repo.errorIfNotClean();
+        }
+    }
 
+    /**
+     * Store the release info with the versions of all modules and append the released modules to the history.
+     *
+     * @param log log.
+     * @param repo the repository.
+     * @param basedir base directory of the root project.
+     * @param infoStorage storage of the release info.
+     * @param reactor reactor with the modules to release.
+     * @param writeHistory whether the release history is appended.
+     * @return the stored release info.
+     * @throws MojoExecutionException if the release history cannot be written.
+     */
+    static ImmutableReleaseInfo storeRelease(Log log, LocalGitRepo repo, File basedir, ReleaseInfoStorage infoStorage,
+                                             Reactor reactor, boolean writeHistory) throws MojoExecutionException {
         final ImmutableReleaseInfo.Builder releaseBuilder = ImmutableReleaseInfo.builder().tagName(
             ReleaseDateSingleton.getInstance().tagName());
 
-        List<String> modulesToRelease = new ArrayList<>();
-        for (ReleasableModule releasableModule : releasableModules) {
+        List<ImmutableModuleVersion> releasedModules = new ArrayList<>();
+        for (ReleasableModule releasableModule : reactor.getModulesInBuildOrder()) {
             releaseBuilder.addModules(releasableModule.getImmutableModule());
             if (releasableModule.isToBeReleased()) {
-                modulesToRelease.add(releasableModule.getRelativePathToModule());
+                releasedModules.add(releasableModule.getImmutableModule());
             }
         }
 
         final ImmutableReleaseInfo currentRelease = releaseBuilder.build();
-        infoStorage.store(currentRelease);
-        getLog().info("current release: " + currentRelease);
-
-        saveModulesToBuild(reactor);
-
-        saveFilesToRevert(repo, reactor);
-
-        tagRepo(repo, currentRelease);
+        if (writeHistory) {
+            try {
+                new ReleaseHistory(basedir, repo.git).append(releasedModules);
+            } catch (IOException e) {
+                throw new MojoExecutionException("unable to append to " + ReleaseHistory.HISTORY_FILE, e);
+            }
+        }
+        infoStorage.store(currentRelease, ReleaseHistory.HISTORY_FILE);
+        log.info("current release: " + currentRelease);
+        return currentRelease;
     }
 
-    private static List<String> updatePomsAndReturnChangedFiles(Log log, LocalGitRepo repo, Reactor reactor) throws
-                                                                                                             MojoExecutionException,
-                                                                                                             ValidationException {
-        PomUpdater pomUpdater = new PomUpdater(log, reactor);
+    private static List<String> updatePomsAndReturnChangedFiles(Log log, LocalGitRepo repo, Reactor reactor,
+                                                                int threads) throws MojoExecutionException,
+                                                                                    ValidationException {
+        PomUpdater pomUpdater = new PomUpdater(log, reactor, threads);
         PomUpdater.UpdateResult result = pomUpdater.updateVersion();
         if (!result.success()) {
             log.info("Going to revert changes because there was an error.");
             repo.revertChanges(log, result.alteredPoms);
-            if (result.unexpectedException != null) {
-                throw new ValidationException("Unexpected exception while setting the release versions in the pom",
-                                              result.unexpectedException);
-            } else {
-                String summary = "Cannot release with references to snapshot dependencies";
-                List<String> messages = new ArrayList<>();
-                messages.add(summary);
-                messages.add("The following dependency errors were found:");
-                for (String dependencyError : result.dependencyErrors) {
-                    messages.add(" * " + dependencyError);
-                }
-                throw new ValidationException(summary, messages);
-            }
+            throw updateFailure(result);
         }
         return result.alteredPoms.stream().map(ReleaseFileUtils::canonicalName).collect(Collectors.toList());
     }
 
+    private void writeReleasePoms(Reactor reactor) throws ValidationException {
+        PomUpdater pomUpdater = new PomUpdater(getLog(), reactor, detectionThreads());
+        PomUpdater.UpdateResult result = pomUpdater.writeReleasePoms(project);
+        if (!result.success()) {
+            getLog().info("Going to delete the release poms because there was an error.");
+            result.alteredPoms.forEach(FileUtils::deleteQuietly);
+            throw updateFailure(result);
+        }
+        final File reactorPom = new File(project.getBuild().getDirectory(), Constants.RELEASE_REACTOR_POM);
+        getLog().info("Release poms written, build the release with: mvn -f "
+                      + project.getBasedir().toPath().relativize(reactorPom.toPath()) + " deploy");
+    }
+
+    static ValidationException updateFailure(PomUpdater.UpdateResult result) {
+        if (result.unexpectedException != null) {
+            return new ValidationException("Unexpected exception while setting the release versions in the pom",
+                                           result.unexpectedException);
+        }
+        String summary = "Cannot release with references to snapshot dependencies";
+        List<String> messages = new ArrayList<>();
+        messages.add(summary);
+        messages.add("The following dependency errors were found:");
+        for (String dependencyError : result.dependencyErrors) {
+            messages.add(" * " + dependencyError);
+        }
+        return new ValidationException(summary, messages);
+    }
+
     private void saveFilesToRevert(LocalGitRepo repo, Reactor reactor) throws MojoExecutionException {
-        final List<String> changedFiles = updatePomsAndReturnChangedFiles(getLog(), repo, reactor);
+        final List<String> changedFiles = updatePomsAndReturnChangedFiles(getLog(), repo, reactor,
+                                                                          detectionThreads());
         changedFiles.add(Constants.MODULE_BUILD_FILE);
         changedFiles.add(Constants.FILES_TO_REVERT);
         ReleaseFileUtils.write(Constants.FILES_TO_REVERT, changedFiles.stream().collect(joining("\n")));
@@ -123,12 +245,12 @@ public class ReleaseMojo extends BaseMojo {
         ReleaseFileUtils.write(Constants.MODULE_BUILD_FILE, changedModules);
     }
 
-    private void tagRepo(LocalGitRepo repo, ImmutableReleaseInfo releaseInfo) throws GitAPIException {
+    static void tagRepo(Log log, LocalGitRepo repo, ImmutableReleaseInfo releaseInfo) throws GitAPIException {
         final Optional<String> optionalTag = releaseInfo.getTagName();
         if (optionalTag.isPresent()) {
             final AnnotatedTag tag = new AnnotatedTag(optionalTag.get(), releaseInfo);
 
-            getLog().info("About to tag repository with " + releaseInfo.toString());
+            log.info("About to tag repository with " + releaseInfo.toString());
             repo.tagRepo(tag);
         } else {
             throw new ValidationException("internal error: no tag found on release info " + releaseInfo);
@@ -0,0 +1,8 @@
+package de.hilling.maven.release;
+
+/**
+ * Where the poms with the release versions are written.
+ */
+public enum ReleasePoms {
+    WorkingTree, BuildDirectory;
+}
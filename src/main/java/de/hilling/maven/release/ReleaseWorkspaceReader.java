@@ -0,0 +1,95 @@
+package de.hilling.maven.release;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.WorkspaceReader;
+import org.eclipse.aether.repository.WorkspaceRepository;
+
+/**
+ * Resolves the modules released by {@link ReleaseLifecycleParticipant} at their release versions. The reactor reader
+ * of Maven indexes the projects before lifecycle participants run, so it only knows them at their snapshot versions.
+ */
+public class ReleaseWorkspaceReader implements WorkspaceReader {
+
+    private final    WorkspaceRepository       repository = new WorkspaceRepository("smart-release");
+    private volatile Map<String, MavenProject> projects   = Collections.emptyMap();
+
+    /**
+     * @param releasedProjects projects with their release versions set.
+     */
+    void setReleasedProjects(Collection<MavenProject> releasedProjects) {
+        projects = releasedProjects.stream().collect(
+            Collectors.toMap(project -> key(project.getGroupId(), project.getArtifactId(), project.getVersion()),
+                             Function.identity()));
+    }
+
+    @Override
+    public WorkspaceRepository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public File findArtifact(Artifact artifact) {
+        final MavenProject project = projects.get(key(artifact));
+        if (project == null) {
+            return null;
+        }
+        if ("pom".equals(artifact.getExtension())) {
+            return project.getFile();
+        }
+        final File packaged = packagedFile(project, artifact);
+        if (packaged != null) {
+            return packaged;
+        }
+        if (!"jar".equals(artifact.getExtension())) {
+            return null;
+        }
+        final String directory;
+        if (artifact.getClassifier().isEmpty()) {
+            directory = project.getBuild().getOutputDirectory();
+        } else if ("tests".equals(artifact.getClassifier())) {
+            directory = project.getBuild().getTestOutputDirectory();
+        } else {
+            return null;
+        }
+        final File outputDirectory = new File(directory);
+        return outputDirectory.isDirectory()
+               ? outputDirectory
+               : null;
+    }
+
+    @Override
+    public List<String> findVersions(Artifact artifact) {
+        final MavenProject project = projects.get(key(artifact));
+        return project == null
+               ? Collections.emptyList()
+               : Collections.singletonList(project.getVersion());
+    }
+
+    private static File packagedFile(MavenProject project, Artifact artifact) {
+        return Stream.concat(Stream.of(project.getArtifact()), project.getAttachedArtifacts().stream())
+                     .filter(packaged -> packaged.getFile() != null && packaged.getFile().isFile())
+                     .filter(packaged -> artifact.getExtension().equals(packaged.getArtifactHandler().getExtension()))
+                     .filter(packaged -> Objects.toString(packaged.getClassifier(), "")
+                                                .equals(artifact.getClassifier()))
+                     .map(org.apache.maven.artifact.Artifact::getFile).findFirst().orElse(null);
+    }
+
+    private static String key(Artifact artifact) {
+        return key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
+    }
+
+    private static String key(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+}
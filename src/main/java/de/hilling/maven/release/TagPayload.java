@@ -0,0 +1,29 @@
+package de.hilling.maven.release;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.immutables.gson.Gson;
+import org.immutables.value.Value;
+
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+
+/**
+ * Compact message of an {@link AnnotatedTag}. Only the modules released with the tag are contained, the versions of
+ * all other modules are found in the release info file the tag points to.
+ */
+@Gson.TypeAdapters
+@Value.Immutable
+public interface TagPayload {
+
+    /**
+     * @return versions of the modules released with the tag.
+     */
+    List<ImmutableModuleVersion> getReleasedModules();
+
+    /**
+     * @return id of the release info blob in the tagged commit or in its note, or of the directory tree of a sharded
+     * release info.
+     */
+    String getReleaseInfoBlob();
+}
@@ -0,0 +1,112 @@
+package de.hilling.maven.release;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.model.Scm;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.LocalGitRepo;
+import de.hilling.maven.release.repository.ReleaseTags;
+import de.hilling.maven.release.versioning.ModuleVersion;
+import de.hilling.maven.release.versioning.ReleaseInfo;
+
+/**
+ * Maintains the release tags of the repository. Release tags that are not referenced by the current release info
+ * anymore can be deleted or archived, and all loose refs are packed. Use {@code -DdryRun} to only report the refs and
+ * bytes that would be saved.
+ */
+@Mojo(name = "tags", requiresDirectInvocation = true,
+      // this should not be bound to a phase as this plugin starts a phase itself
+      inheritByDefault = true, // so you can configure this in a shared parent pom
+      requiresProject = true, // this can only run against a maven project
+      aggregator = true // the plugin should only run once against the aggregator pom
+      )
+public class TagsMojo extends BaseMojo {
+
+    /**
+     * Determines what is done with release tags not referenced by the release info. Possible values:
+     * {@code Keep}, {@code Delete}, {@code Archive}. Archived tags are moved below {@code refs/archive/tags/}.
+     */
+    @Parameter(alias = "unreferencedTags", defaultValue = "Keep", property = "unreferencedTags")
+    protected UnreferencedTagsAction unreferencedTags;
+    /**
+     * Also delete or archive the unreferenced tags on the remote.
+     */
+    @Parameter(defaultValue = "false", alias = "updateRemoteTags", property = "updateRemoteTags")
+    protected boolean                updateRemoteTags;
+    /**
+     * Only report the refs and bytes that would be saved, without changing the repository.
+     */
+    @Parameter(defaultValue = "false", alias = "dryRun", property = "dryRun")
+    protected boolean                dryRun;
+
+    @Override
+    public void executeConcreteMojo(Scm scm, Scm originalScm, LocalGitRepo repo) throws MojoExecutionException,
+                                                                                        MojoFailureException,
+                                                                                        GitAPIException {
+        final ReleaseInfo releaseInfo = loadReleaseInfo(new ReleaseInfoStorage(project.getBasedir(), repo.git), repo);
+        if (releaseInfo.isEmpty() && unreferencedTags != UnreferencedTagsAction.Keep) {
+            throw new MojoFailureException("no release info found, refusing to remove all release tags");
+        }
+        final Set<String> referencedTags = new LinkedHashSet<>();
+        releaseInfo.getTagName().ifPresent(referencedTags::add);
+        for (ModuleVersion moduleVersion : releaseInfo.getModules()) {
+            referencedTags.add(moduleVersion.getReleaseTag());
+        }
+        final ReleaseTags releaseTags = repo.releaseTags();
+        try {
+            final ReleaseTags.Summary summary = releaseTags.summarize(referencedTags);
+            report(summary);
+            if (dryRun) {
+                return;
+            }
+            switch (unreferencedTags) {
+                case Delete:
+                    releaseTags.delete(summary.getUnreferencedTags(), updateRemoteTags);
+                    getLog().info("deleted " + summary.getUnreferencedTags().size() + " release tags");
+                    break;
+                case Archive:
+                    releaseTags.archive(summary.getUnreferencedTags(), updateRemoteTags);
+                    getLog().info("archived " + summary.getUnreferencedTags().size() + " release tags");
+                    break;
+                default:
+            }
+            if (releaseTags.pack(releaseTags.summarize(referencedTags).getLooseRefs())) {
+                getLog().info("packed loose refs");
+            } else {
+                getLog().info("refs are not stored as files, nothing to pack");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("unable to maintain release tags", e);
+        }
+    }
+
+    private void report(ReleaseTags.Summary summary) {
+        final String prefix = dryRun
+                              ? "would "
+                              : "";
+        getLog().info(summary.getReleaseTags() + " release tags, " + summary.getUnreferencedTags().size()
+                      + " not referenced by the release info");
+        for (Ref tag : summary.getUnreferencedTags()) {
+            getLog().info(" * " + Repository.shortenRefName(tag.getName()));
+        }
+        if (unreferencedTags != UnreferencedTagsAction.Keep && !summary.getUnreferencedTags().isEmpty()) {
+            getLog().info(prefix + "save " + summary.getAdvertisedBytes() + " bytes of every ref advertisement");
+            if (unreferencedTags == UnreferencedTagsAction.Delete) {
+                getLog().info(prefix + "free " + summary.getTagObjectBytes()
+                              + " bytes of tag objects on the next garbage collection");
+            }
+        }
+        getLog().info(prefix + "pack " + summary.getLooseRefs().size() + " loose refs of "
+                      + summary.getLooseRefBytes() + " bytes");
+    }
+}
@@ -1,30 +1,49 @@
 package de.hilling.maven.release;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
-import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
-import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.CommitIndex;
+import de.hilling.maven.release.repository.GitContext;
+import de.hilling.maven.release.repository.GitContext.WalkLease;
 
 public class TreeWalkingDiffDetector {
 
-    private final Repository repo;
+    private final GitContext context;
     private final Log log;
+    private final boolean compareTrees;
 
-    public TreeWalkingDiffDetector(Repository repo, Log log) {
-        this.repo = repo;
+    /**
+     * @param context shared access to the repository to detect changes in.
+     * @param log maven logger.
+     * @param compareTrees if true, the trees at HEAD and at the tag are compared instead of walking all commits in
+     * between. Changes that have been reverted since the tag are not detected in this mode.
+     */
+    public TreeWalkingDiffDetector(GitContext context, Log log, boolean compareTrees) {
+        this.context = context;
         this.log = log;
+        this.compareTrees = compareTrees;
     }
 
     private static void stopWalkingWhenTheTagsAreHit(Ref tagReference, RevWalk walk) throws IOException {
@@ -34,69 +53,285 @@ public class TreeWalkingDiffDetector {
     }
 
     /**
-     * Detect changes is given module
+     * Detect changes in all given modules with a single walk from HEAD to the given tag.
+     * <p>
+     * Every changed path is assigned to the module owning it, i.e. the module with the longest path that contains the
+     * changed path. Changes to the release info and the release history are ignored in the top level directory of
+     * each module, the only place where they can exist.
+     * </p>
+     *
+     * @param modulePaths relative paths of all modules (directories) to run detection in, "." for the root module.
+     * @param tagReference reference tag to stop at.
+     * @return map of module path to true if any change was detected in that module.
+     * @throws IOException on git exception.
+     */
+    public Map<String, Boolean> changedModulesSince(Collection<String> modulePaths, Ref tagReference) throws
+                                                                                                     IOException {
+        return changedModulesSince(modulePaths, tagReference, null, Collections.emptySet());
+    }
+
+    /**
+     * Continue a previous detection of {@link #changedModulesSince(Collection, Ref)} up to the current HEAD. Only the
+     * commits that are not reachable from the previously checked HEAD are walked, modules that had changed already stay
+     * changed. Walking the history is required, in tree comparison mode all changes are detected from scratch.
      *
-     * @param moduleForChangeDetection module (directory) to run detection in.
-     * @param childModules child modules (directories) to ignore.
+     * @param modulePaths relative paths of all modules (directories) to run detection in, "." for the root module.
      * @param tagReference reference tag to stop at.
-     * @return true if any change was detected.
+     * @param checkedHead HEAD of the previous detection, must be an ancestor of the current HEAD. Null to detect from
+     * scratch.
+     * @param changedAtCheckedHead modules that had changed at the previously checked HEAD.
+     * @return map of module path to true if any change was detected in that module.
      * @throws IOException on git exception.
      */
-    public boolean hasChangedSince(String moduleForChangeDetection, java.util.List<String> childModules, Ref tagReference) throws
-                                                                                                             IOException {
-        try(RevWalk walk = new RevWalk(repo)) {
+    public Map<String, Boolean> changedModulesSince(Collection<String> modulePaths, Ref tagReference,
+                                                    ObjectId checkedHead, Collection<String> changedAtCheckedHead)
+        throws IOException {
+        final Set<String> modules = new HashSet<>(modulePaths);
+        final Set<String> changedModules = new HashSet<>();
+        if (checkedHead != null && !compareTrees) {
+            changedModules.addAll(changedAtCheckedHead);
+            changedModules.retainAll(modules);
+        }
+        try (WalkLease pooledWalk = context.walk(); TreeWalk treeWalk = new TreeWalk(context.reader())) {
+            final RevWalk walk = pooledWalk.get();
             walk.setRetainBody(false);
-            walk.markStart(walk.parseCommit(repo.getRefDatabase().findRef("HEAD").getObjectId()));
-            filterOutOtherModulesChanges(moduleForChangeDetection, childModules, walk);
-            stopWalkingWhenTheTagsAreHit(tagReference, walk);
-            boolean changed = false;
-            for (RevCommit revCommit : walk) {
-                changed = true;
-                log.debug("change detected: " + revCommit);
+            if (compareTrees) {
+                final RevTree headTree = walk.parseCommit(headId()).getTree();
+                final RevTree tagTree = walk.parseCommit(tagReference.getTarget().getObjectId()).getTree();
+                if (!onlyReleaseInfoDiffers(treeWalk, headTree, tagTree)) {
+                    treeWalk.reset(headTree, tagTree);
+                    treeWalk.setRecursive(true);
+                    treeWalk.setFilter(TreeFilter.ANY_DIFF);
+                    collectChangedModules(treeWalk, modules, changedModules, tagReference.getName());
+                }
+            } else if (changedModules.size() < modules.size()) {
+                walk.markStart(walk.parseCommit(headId()));
+                stopWalkingWhenTheTagsAreHit(tagReference, walk);
+                if (checkedHead != null) {
+                    walk.markUninteresting(walk.parseCommit(checkedHead));
+                }
+                final CommitIndex index = context.commitIndex();
+                int skippedCommits = 0;
+                for (RevCommit revCommit : walk) {
+                    if (cannotChangeRemainingModules(index, walk, treeWalk, revCommit, modules, changedModules)) {
+                        skippedCommits++;
+                        continue;
+                    }
+                    resetToCommitAndParents(walk, treeWalk, revCommit);
+                    collectChangedModules(treeWalk, modules, changedModules, revCommit.name());
+                    if (changedModules.size() == modules.size()) {
+                        break;
+                    }
+                }
+                if (skippedCommits > 0) {
+                    log.debug("commits skipped by the commit index: " + skippedCommits);
+                }
+            }
+        }
+        final Map<String, Boolean> result = new HashMap<>();
+        for (String module : modules) {
+            result.put(module, changedModules.contains(module));
+        }
+        return result;
+    }
+
+    private void collectChangedModules(TreeWalk treeWalk, Set<String> modules, Set<String> changedModules,
+                                       String source) throws IOException {
+        while (treeWalk.next()) {
+            final String path = treeWalk.getPathString();
+            final String owner = owningModule(modules, path);
+            if (owner == null || ReleaseInfoStorage.isReleaseInfoPath(pathInModule(owner, path))
+                || !changedInAllParents(treeWalk)) {
+                continue;
+            }
+            if (changedModules.add(owner)) {
+                log.debug("change detected in " + owner + ": " + source);
             }
-            return changed;
         }
     }
 
-    private void filterOutOtherModulesChanges(String modulePath, List<String> childModules, RevWalk walk) {
-        boolean isRootModule = ".".equals(modulePath);
-        boolean isMultiModuleProject = !isRootModule || !childModules.isEmpty();
-        List<TreeFilter> treeFilters = new ArrayList<>();
-        treeFilters.add(TreeFilter.ANY_DIFF);
-        if (isMultiModuleProject) {
-            if (!isRootModule) {
-                // for sub-modules, look for changes only in the sub-module path...
-                treeFilters.add(PathFilter.create(modulePath));
+    /**
+     * Compare the root trees only.
+     *
+     * @return true if the trees are equal apart from the release info.
+     */
+    private static boolean onlyReleaseInfoDiffers(TreeWalk treeWalk, RevTree headTree, RevTree tagTree) throws
+                                                                                                        IOException {
+        treeWalk.reset(headTree, tagTree);
+        treeWalk.setRecursive(false);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        while (treeWalk.next()) {
+            if (!ReleaseInfoStorage.isReleaseInfo(treeWalk.getNameString())) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // ... but ignore any sub-modules of the current sub-module, because they can change independently of the current module
-            for (String childModule : childModules) {
-                String path = isRootModule
-                              ? childModule
-                              : modulePath + "/" + childModule;
-                treeFilters.add(PathFilter.create(path).negate());
+    /**
+     * Use the changed path filter of the commit index to skip the tree diff of the commit. The root module owns all
+     * paths not owned by other modules, which the filter cannot rule out, so its changes are looked up in the trees
+     * of the directories above the other modules.
+     *
+     * @return true if the commit cannot change any module that has not changed yet.
+     */
+    private static boolean cannotChangeRemainingModules(CommitIndex index, RevWalk walk, TreeWalk treeWalk,
+                                                        RevCommit commit, Set<String> modules,
+                                                        Set<String> changedModules) throws IOException {
+        if (!index.hasChangedPaths(commit)) {
+            return false;
+        }
+        boolean rootModuleRemains = false;
+        for (String module : modules) {
+            if (changedModules.contains(module)) {
+                continue;
+            }
+            if (".".equals(module)) {
+                rootModuleRemains = true;
+            } else if (index.mayHaveChanged(commit, module)) {
+                return false;
             }
         }
-        TreeFilter treeFilter = treeFilters.size() == 1
-                                ? treeFilters.get(0)
-                                : AndTreeFilter.create(treeFilters);
-        TreeFilter releaseInfoFilter = new TreeFilter() {
-            @Override
-            public boolean include(TreeWalk walker) {
-                final String nameString = walker.getPathString();
-                return !nameString.endsWith(ReleaseInfoStorage.RELEASE_INFO_FILE);
+        return !rootModuleRemains || !rootModuleMayHaveChanged(walk, treeWalk, commit, modules);
+    }
+
+    /**
+     * Compare the trees of the commit and its first parent without descending into the directories of the other
+     * modules. Every change of a merge commit is also a change against its first parent.
+     *
+     * @return true if a path owned by the root module changed.
+     */
+    private static boolean rootModuleMayHaveChanged(RevWalk walk, TreeWalk treeWalk, RevCommit commit,
+                                                    Set<String> modules) throws IOException {
+        treeWalk.reset();
+        treeWalk.setRecursive(false);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        treeWalk.addTree(commit.getTree());
+        if (commit.getParentCount() == 0) {
+            treeWalk.addTree(new EmptyTreeIterator());
+        } else {
+            walk.parseHeaders(commit.getParent(0));
+            treeWalk.addTree(commit.getParent(0).getTree());
+        }
+        while (treeWalk.next()) {
+            final String path = treeWalk.getPathString();
+            if (modules.contains(path) || ReleaseInfoStorage.isReleaseInfo(path)) {
+                continue;
             }
+            if (FileMode.TREE.equals(treeWalk.getRawMode(0)) && FileMode.TREE.equals(treeWalk.getRawMode(1))
+                && containsModule(modules, path)) {
+                treeWalk.enterSubtree();
+                continue;
+            }
+            return true;
+        }
+        return false;
+    }
 
-            @Override
-            public boolean shouldBeRecursive() {
+    private static boolean containsModule(Set<String> modules, String directory) {
+        final String prefix = directory + "/";
+        for (String module : modules) {
+            if (module.startsWith(prefix)) {
                 return true;
             }
+        }
+        return false;
+    }
+
+    /**
+     * Commits with a generation from the commit index at or below the generation of the searched commit are not
+     * followed, the searched commit cannot be one of their ancestors.
+     *
+     * @param commitId commit to check.
+     * @return true if the commit exists and is reachable from HEAD.
+     * @throws IOException on git exception.
+     */
+    boolean isReachableFromHead(ObjectId commitId) throws IOException {
+        final CommitIndex index = context.commitIndex();
+        try (WalkLease pooledWalk = context.walk()) {
+            final RevWalk walk = pooledWalk.get();
+            final RevCommit target = walk.parseCommit(commitId);
+            final RevCommit head = walk.parseCommit(headId());
+            final int targetGeneration = index.generation(target);
+            if (targetGeneration == CommitIndex.GENERATION_UNKNOWN) {
+                return walk.isMergedInto(target, head);
+            }
+            final Deque<RevCommit> pending = new ArrayDeque<>();
+            final Set<ObjectId> seen = new HashSet<>();
+            pending.add(head);
+            while (!pending.isEmpty()) {
+                final RevCommit commit = pending.poll();
+                if (!seen.add(commit)) {
+                    continue;
+                }
+                if (commit.equals(target)) {
+                    return true;
+                }
+                final int generation = index.generation(commit);
+                if (generation == CommitIndex.GENERATION_UNKNOWN || generation > targetGeneration) {
+                    walk.parseHeaders(commit);
+                    Collections.addAll(pending, commit.getParents());
+                }
+            }
+            return false;
+        } catch (MissingObjectException | IncorrectObjectTypeException e) {
+            return false;
+        }
+    }
+
+    ObjectId headId() throws IOException {
+        return context.getRepository().getRefDatabase().findRef("HEAD").getObjectId();
+    }
+
+    private static void resetToCommitAndParents(RevWalk walk, TreeWalk treeWalk, RevCommit revCommit) throws
+                                                                                                      IOException {
+        treeWalk.reset();
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        treeWalk.addTree(revCommit.getTree());
+        if (revCommit.getParentCount() == 0) {
+            treeWalk.addTree(new EmptyTreeIterator());
+        }
+        for (RevCommit parent : revCommit.getParents()) {
+            walk.parseHeaders(parent);
+            treeWalk.addTree(parent.getTree());
+        }
+    }
+
+    /**
+     * A merge commit only introduces a change on its own if the path differs from all of its parents.
+     */
+    private static boolean changedInAllParents(TreeWalk treeWalk) {
+        for (int parent = 1; parent < treeWalk.getTreeCount(); parent++) {
+            if (treeWalk.idEqual(0, parent) && treeWalk.getRawMode(0) == treeWalk.getRawMode(parent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String pathInModule(String modulePath, String path) {
+        return ".".equals(modulePath)
+               ? path
+               : path.substring(modulePath.length() + 1);
+    }
 
-            @Override
-            public TreeFilter clone() {
-                return this;
+    /**
+     * Longest prefix match of the given path on the module paths.
+     *
+     * @return owning module or null if the path is not part of any module.
+     */
+    private static String owningModule(Set<String> modules, String path) {
+        String candidate = path;
+        int separator;
+        while ((separator = candidate.lastIndexOf('/')) > 0) {
+            candidate = candidate.substring(0, separator);
+            if (modules.contains(candidate)) {
+                return candidate;
             }
-        };
-        walk.setTreeFilter(AndTreeFilter.create(releaseInfoFilter, treeFilter));
+        }
+        return modules.contains(".")
+               ? "."
+               : null;
     }
 }
@@ -0,0 +1,8 @@
+package de.hilling.maven.release;
+
+/**
+ * What should be done with release tags no longer referenced by the release info.
+ */
+public enum UnreferencedTagsAction {
+    Keep, Delete, Archive;
+}
@@ -0,0 +1,305 @@
+package de.hilling.maven.release.releaseinfo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RmCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.hooks.CommitMsgHook;
+import org.eclipse.jgit.hooks.PostCommitHook;
+import org.eclipse.jgit.hooks.PreCommitHook;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.GpgConfig;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+/**
+ * Commits a few files on top of HEAD without going through the index.
+ * <p>
+ * The blobs are streamed from the working tree files into the object database, and only the trees on the paths of the
+ * changed files are rewritten, all other trees of HEAD are reused by id. HEAD is moved with a compare-and-swap update,
+ * so a concurrent commit makes the release fail instead of being lost. Afterwards the entries of the changed files are
+ * updated in the index, which is neither read from the working tree nor compared with it. The working tree files must
+ * already have the committed content.
+ * </p>
+ * <p>
+ * Commits built this way are neither signed nor passed to hooks. If {@code commit.gpgSign} is set or a
+ * {@code pre-commit}, {@code commit-msg} or {@code post-commit} hook is installed, the files are added to the index and
+ * committed with {@link org.eclipse.jgit.api.CommitCommand} instead, which signs the commit and runs the hooks.
+ * </p>
+ */
+class ReleaseCommit {
+
+    private static final List<String> COMMIT_HOOKS = Arrays.asList(PreCommitHook.NAME, CommitMsgHook.NAME,
+                                                                   PostCommitHook.NAME);
+
+    private static final Comparator<Entry> GIT_ORDER = (first, second) -> {
+        final byte[] a = first.sortKey();
+        final byte[] b = second.sortKey();
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return a.length - b.length;
+    };
+
+    private final Repository          repository;
+    private final File                workTree;
+    private final Map<String, File>   changes = new LinkedHashMap<>();
+
+    ReleaseCommit(Repository repository) {
+        this.repository = repository;
+        this.workTree = repository.getWorkTree();
+    }
+
+    /**
+     * @param path path of the file relative to the repository root. The file in the working tree must already have the
+     * new content.
+     */
+    void put(String path) {
+        changes.put(path, new File(workTree, path));
+    }
+
+    /**
+     * @param path path of a file relative to the repository root.
+     */
+    void delete(String path) {
+        changes.put(path, null);
+    }
+
+    /**
+     * @param message commit message.
+     * @return id of the new commit.
+     * @throws IOException if the commit cannot be created or HEAD was changed concurrently.
+     */
+    ObjectId commit(String message) throws IOException {
+        if (needsCommitCommand()) {
+            return commitThroughIndex(message);
+        }
+        final DirCache dirCache = repository.lockDirCache();
+        try (ObjectInserter inserter = repository.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk walk = new RevWalk(reader)) {
+            final ObjectId head = repository.resolve(Constants.HEAD);
+            final Map<String, ObjectId> blobs = new LinkedHashMap<>();
+            for (Map.Entry<String, File> change : changes.entrySet()) {
+                blobs.put(change.getKey(), change.getValue() == null
+                                           ? null
+                                           : insertBlob(inserter, change.getValue()));
+            }
+            final AnyObjectId headTree = head == null
+                                         ? null
+                                         : walk.parseCommit(head).getTree();
+            ObjectId tree = editTree(reader, inserter, headTree, blobs);
+            if (tree == null) {
+                tree = inserter.insert(Constants.OBJ_TREE, new byte[0]);
+            }
+
+            final PersonIdent ident = new PersonIdent(repository);
+            final CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(tree);
+            if (head != null) {
+                commit.setParentId(head);
+            }
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(message);
+            final ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            final RefUpdate update = repository.updateRef(Constants.HEAD);
+            update.setNewObjectId(commitId);
+            update.setExpectedOldObjectId(head == null
+                                          ? ObjectId.zeroId()
+                                          : head);
+            update.setRefLogIdent(ident);
+            update.setRefLogMessage("commit: " + message, false);
+            final RefUpdate.Result result = update.update(walk);
+            if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+                throw new IOException("unable to move HEAD to " + commitId.name() + ": " + result);
+            }
+
+            updateIndex(dirCache, blobs);
+            return commitId;
+        } finally {
+            dirCache.unlock();
+        }
+    }
+
+    /**
+     * @return true if commits have to be signed or hooks have to run, which only the commit command supports.
+     */
+    private boolean needsCommitCommand() {
+        if (new GpgConfig(repository.getConfig()).isSignCommits()) {
+            return true;
+        }
+        for (String hook : COMMIT_HOOKS) {
+            if (repository.getFS().findHook(repository, hook) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ObjectId commitThroughIndex(String message) throws IOException {
+        final Git git = Git.wrap(repository);
+        final AddCommand add = git.add();
+        final RmCommand rm = git.rm().setCached(true);
+        boolean adding = false;
+        boolean removing = false;
+        for (Map.Entry<String, File> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                rm.addFilepattern(change.getKey());
+                removing = true;
+            } else {
+                add.addFilepattern(change.getKey());
+                adding = true;
+            }
+        }
+        try {
+            if (adding) {
+                add.call();
+            }
+            if (removing) {
+                rm.call();
+            }
+            return git.commit().setMessage(message).call().getId();
+        } catch (GitAPIException e) {
+            throw new IOException("unable to commit " + changes.keySet() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectId insertBlob(ObjectInserter inserter, File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return inserter.insert(Constants.OBJ_BLOB, file.length(), in);
+        }
+    }
+
+    private void updateIndex(DirCache dirCache, Map<String, ObjectId> blobs) throws IOException {
+        final DirCacheEditor editor = dirCache.editor();
+        for (Map.Entry<String, ObjectId> blob : blobs.entrySet()) {
+            final String path = blob.getKey();
+            if (blob.getValue() == null) {
+                editor.add(new DirCacheEditor.DeletePath(path));
+                continue;
+            }
+            final File file = changes.get(path);
+            final long length = file.length();
+            editor.add(new DirCacheEditor.PathEdit(path) {
+                @Override
+                public void apply(DirCacheEntry entry) {
+                    entry.setFileMode(FileMode.REGULAR_FILE);
+                    entry.setObjectId(blob.getValue());
+                    entry.setLength(length);
+                    entry.setLastModified(Instant.ofEpochMilli(file.lastModified()));
+                }
+            });
+        }
+        editor.finish();
+        dirCache.write();
+        if (!dirCache.commit()) {
+            throw new IOException("unable to write the index");
+        }
+    }
+
+    /**
+     * @param tree tree to edit, null for none.
+     * @param edits new blob ids by path relative to the tree, null to delete the path.
+     * @return id of the edited tree, null if it is empty.
+     */
+    private static ObjectId editTree(ObjectReader reader, ObjectInserter inserter, AnyObjectId tree,
+                                     Map<String, ObjectId> edits) throws IOException {
+        final Map<String, Entry> entries = new TreeMap<>();
+        if (tree != null) {
+            for (CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, tree); !parser.eof();
+                 parser.next()) {
+                entries.put(parser.getEntryPathString(),
+                            new Entry(parser.getEntryPathString(), parser.getEntryFileMode(),
+                                      parser.getEntryObjectId()));
+            }
+        }
+        final Map<String, Map<String, ObjectId>> nestedEdits = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectId> edit : edits.entrySet()) {
+            final String path = edit.getKey();
+            final int slash = path.indexOf('/');
+            if (slash >= 0) {
+                nestedEdits.computeIfAbsent(path.substring(0, slash), name -> new LinkedHashMap<>())
+                           .put(path.substring(slash + 1), edit.getValue());
+            } else if (edit.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(path, FileMode.REGULAR_FILE, edit.getValue()));
+            }
+        }
+        for (Map.Entry<String, Map<String, ObjectId>> nested : nestedEdits.entrySet()) {
+            final String name = nested.getKey();
+            final Entry existing = entries.get(name);
+            final ObjectId subtree = editTree(reader, inserter, existing != null && existing.mode == FileMode.TREE
+                                                                ? existing.id
+                                                                : null, nested.getValue());
+            if (subtree == null) {
+                entries.remove(name);
+            } else {
+                entries.put(name, new Entry(name, FileMode.TREE, subtree));
+            }
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        final List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(GIT_ORDER);
+        final TreeFormatter formatter = new TreeFormatter();
+        for (Entry entry : sorted) {
+            formatter.append(entry.name, entry.mode, entry.id);
+        }
+        return inserter.insert(formatter);
+    }
+
+    private static final class Entry {
+        private final String   name;
+        private final FileMode mode;
+        private final ObjectId id;
+
+        private Entry(String name, FileMode mode, ObjectId id) {
+            this.name = name;
+            this.mode = mode;
+            this.id = id;
+        }
+
+        /**
+         * Git sorts trees as if their name was followed by a slash.
+         */
+        private byte[] sortKey() {
+            return (mode == FileMode.TREE
+                    ? name + "/"
+                    : name).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package de.hilling.maven.release.releaseinfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+
+import com.google.gson.JsonParseException;
+
+import de.hilling.maven.release.versioning.GsonFactory;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+import de.hilling.maven.release.versioning.ModuleVersion;
+
+/**
+ * Append-only log of all module releases.
+ * <p>
+ * Every release appends one line of compact json per released module to {@code .release-history.jsonl}, which is
+ * committed together with the release info. Lines are never rewritten, so the log grows with the number of releases,
+ * not with the number of modules.
+ * </p>
+ * <p>
+ * Queries use an index in the git directory that maps each artifact to the positions of its lines. The index
+ * remembers the indexed length of the log and a checksum of the last indexed line: lines appended since are added to
+ * it, a log that was rewritten otherwise, e.g. by a merge, is indexed again. The index can be deleted at any time.
+ * </p>
+ */
+public class ReleaseHistory {
+    public static final  String HISTORY_FILE = ".release-history.jsonl";
+    static final         String INDEX_FILE   = "smart-release/release-history-v1.bin";
+    private static final int    MAGIC        = 0x53524849;
+
+    private final File historyFile;
+    private final File indexFile;
+
+    /**
+     * @param basedir directory containing the history file.
+     * @param git repository to keep the index in.
+     */
+    public ReleaseHistory(File basedir, Git git) {
+        this.historyFile = new File(basedir, HISTORY_FILE);
+        this.indexFile = new File(git.getRepository().getDirectory(), INDEX_FILE);
+    }
+
+    /**
+     * Append the released modules to the log. It is committed with the release info.
+     *
+     * @param releasedModules modules released by the current release.
+     * @throws IOException if the log cannot be written.
+     */
+    public void append(Collection<? extends ModuleVersion> releasedModules) throws IOException {
+        if (releasedModules.isEmpty()) {
+            return;
+        }
+        final boolean missingNewline = endsWithoutNewline();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(historyFile, true))) {
+            if (missingNewline) {
+                out.write('\n');
+            }
+            for (ModuleVersion module : releasedModules) {
+                final String line = GsonFactory.compactGson().toJson(ImmutableModuleVersion.copyOf(module),
+                                                                     ImmutableModuleVersion.class);
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @return all artifacts in the log as {@code groupId:artifactId}, with their number of releases.
+     * @throws IOException if the log or the index cannot be read.
+     */
+    public Map<String, Integer> artifacts() throws IOException {
+        final Map<String, Integer> artifacts = new TreeMap<>();
+        index().positions.forEach((artifact, positions) -> artifacts.put(artifact, positions.size()));
+        return artifacts;
+    }
+
+    /**
+     * @param artifact artifact as {@code groupId:artifactId}.
+     * @return all releases of the artifact in the order they were logged.
+     * @throws IOException if the log or the index cannot be read.
+     */
+    public List<ImmutableModuleVersion> releases(String artifact) throws IOException {
+        final List<Position> positions = index().positions.getOrDefault(artifact, Collections.emptyList());
+        final List<ImmutableModuleVersion> releases = new ArrayList<>(positions.size());
+        if (positions.isEmpty()) {
+            return releases;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(historyFile, "r")) {
+            for (Position position : positions) {
+                final byte[] line = new byte[position.length];
+                file.seek(position.offset);
+                file.readFully(line);
+                releases.add(parse(line));
+            }
+        }
+        return releases;
+    }
+
+    private boolean endsWithoutNewline() throws IOException {
+        if (!historyFile.exists() || historyFile.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(historyFile, "r")) {
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        }
+    }
+
+    private Index index() throws IOException {
+        Index index = Index.load(indexFile);
+        if (index == null || !index.matches(historyFile)) {
+            index = new Index();
+        }
+        if (index.extend(historyFile)) {
+            index.store(indexFile);
+        }
+        return index;
+    }
+
+    private static ImmutableModuleVersion parse(byte[] line) throws IOException {
+        try {
+            return GsonFactory.gson().fromJson(new String(line, StandardCharsets.UTF_8), ImmutableModuleVersion.class);
+        } catch (JsonParseException e) {
+            throw new IOException("invalid line in " + HISTORY_FILE + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    private static final class Position {
+        private final long offset;
+        private final int  length;
+
+        private Position(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Index {
+        private final Map<String, List<Position>> positions = new TreeMap<>();
+        private       long                        length;
+        private       long                        lastLineOffset;
+        private       long                        lastLineChecksum;
+
+        private static Index load(File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    return null;
+                }
+                final Index index = new Index();
+                index.length = in.readLong();
+                index.lastLineOffset = in.readLong();
+                index.lastLineChecksum = in.readLong();
+                final int artifacts = in.readInt();
+                for (int i = 0; i < artifacts; i++) {
+                    final String artifact = in.readUTF();
+                    final int count = in.readInt();
+                    final List<Position> positions = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        positions.add(new Position(in.readLong(), in.readInt()));
+                    }
+                    index.positions.put(artifact, positions);
+                }
+                return index;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private void store(File file) throws IOException {
+            FileUtils.forceMkdirParent(file);
+            final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(length);
+                out.writeLong(lastLineOffset);
+                out.writeLong(lastLineChecksum);
+                out.writeInt(positions.size());
+                for (Map.Entry<String, List<Position>> entry : positions.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (Position position : entry.getValue()) {
+                        out.writeLong(position.offset);
+                        out.writeInt(position.length);
+                    }
+                }
+            }
+            FileUtils.deleteQuietly(file);
+            FileUtils.moveFile(tempFile, file);
+        }
+
+        /**
+         * @return true if the indexed part of the log is unchanged.
+         */
+        private boolean matches(File historyFile) throws IOException {
+            if (length == 0) {
+                return true;
+            }
+            if (historyFile.length() < length) {
+                return false;
+            }
+            final byte[] lastLine = new byte[(int) (length - lastLineOffset)];
+            try (RandomAccessFile file = new RandomAccessFile(historyFile, "r")) {
+                file.seek(lastLineOffset);
+                file.readFully(lastLine);
+            }
+            return checksum(lastLine, lastLine.length) == lastLineChecksum;
+        }
+
+        /**
+         * Add the complete lines appended to the log since it was indexed.
+         *
+         * @return true if lines were added.
+         */
+        private boolean extend(File historyFile) throws IOException {
+            if (!historyFile.exists() || historyFile.length() <= length) {
+                return false;
+            }
+            boolean extended = false;
+            try (FileInputStream file = new FileInputStream(historyFile)) {
+                file.getChannel().position(length);
+                final InputStream in = new BufferedInputStream(file);
+                final ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long offset = length;
+                int next;
+                while ((next = in.read()) >= 0) {
+                    line.write(next);
+                    if (next != '\n') {
+                        continue;
+                    }
+                    final byte[] bytes = line.toByteArray();
+                    line.reset();
+                    if (bytes.length > 1) {
+                        final ModuleVersion module = parse(bytes);
+                        positions.computeIfAbsent(module.getArtifact().toString(), artifact -> new ArrayList<>())
+                                 .add(new Position(offset, bytes.length - 1));
+                    }
+                    lastLineOffset = offset;
+                    lastLineChecksum = checksum(bytes, bytes.length);
+                    offset += bytes.length;
+                    length = offset;
+                    extended = true;
+                }
+            }
+            return extended;
+        }
+    }
+}
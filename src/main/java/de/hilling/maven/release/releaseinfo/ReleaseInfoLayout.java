@@ -0,0 +1,19 @@
+package de.hilling.maven.release.releaseinfo;
+
+/**
+ * How the release info is stored.
+ */
+public enum ReleaseInfoLayout {
+    /**
+     * A single {@code .release-info.json} file.
+     */
+    File,
+    /**
+     * One file per module below the {@code .release-info} directory.
+     */
+    Sharded,
+    /**
+     * A git note of the release commit in {@code refs/notes/smart-release}, nothing is committed.
+     */
+    Notes;
+}
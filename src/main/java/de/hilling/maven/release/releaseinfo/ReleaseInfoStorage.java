@@ -1,61 +1,460 @@
 package de.hilling.maven.release.releaseinfo;
 
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import de.hilling.maven.release.versioning.GsonFactory;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
 import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
+import de.hilling.maven.release.versioning.ModuleVersion;
+import de.hilling.maven.release.versioning.QualifiedArtifact;
 import de.hilling.maven.release.versioning.ReleaseInfo;
 
 /**
  * Loading and storing of release-info files.
+ * <p>
+ * The files are streamed, so the json text of the release info file is never held in memory as a whole, neither when
+ * it is written nor when it is committed. The small per-module files of the sharded layout are compared with the
+ * existing files in memory. A note of the notes layout is built as a whole, as git notes are added from a string. In
+ * compact mode the json text is written without any whitespace.
+ * </p>
+ * <p>
+ * In the {@link ReleaseInfoLayout#Sharded sharded} layout, the version of each module is stored in
+ * {@code .release-info/<groupId>/<artifactId>.json} and the tag name in {@code .release-info/release.json}. Only the
+ * files of modules whose version changed are rewritten by a release, and the files are read in parallel. The layout
+ * found in the project directory is loaded, regardless of the configured one.
+ * </p>
+ * <p>
+ * In the {@link ReleaseInfoLayout#Notes notes} layout, the release info is attached as a git note in
+ * {@code refs/notes/smart-release} to the commit that is released, so no commit is needed. It is loaded from the
+ * newest commit reachable from HEAD that has such a note, if the project directory contains no release info.
+ * </p>
+ * <p>
+ * The release info is committed without adding it to the index first, see {@link ReleaseCommit}, so storing it costs
+ * the same in a working tree of any size. Repositories signing their commits or running commit hooks are committed to
+ * through the index.
+ * </p>
  */
 public class ReleaseInfoStorage {
-    public static final String RELEASE_INFO_FILE = ".release-info.json";
+    public static final  String RELEASE_INFO_FILE      = ".release-info.json";
+    public static final  String RELEASE_INFO_DIRECTORY = ".release-info";
+    public static final  String NOTES_REF              = "refs/notes/smart-release";
+    private static final String RELEASE_SHARD          = "release.json";
+    private static final String SHARD_SUFFIX           = ".json";
+
+    private static final Comparator<ModuleVersion> BY_ARTIFACT =
+        Comparator.comparing((ModuleVersion module) -> module.getArtifact().getGroupId())
+                  .thenComparing(module -> module.getArtifact().getArtifactId());
 
-    private final Git          git;
-    private       File         baseDir;
+    private final Git               git;
+    private final boolean           compact;
+    private final ReleaseInfoLayout layout;
+    private       File              baseDir;
 
     public ReleaseInfoStorage(File basedir, Git git) {
+        this(basedir, git, false, ReleaseInfoLayout.File);
+    }
+
+    /**
+     * @param basedir directory containing the release info file.
+     * @param git repository to commit the file to.
+     * @param compact write the file without pretty printing.
+     * @param layout layout to store the release info in.
+     */
+    public ReleaseInfoStorage(File basedir, Git git, boolean compact, ReleaseInfoLayout layout) {
         this.baseDir = basedir;
         this.git = git;
+        this.compact = compact;
+        this.layout = layout;
+    }
+
+    /**
+     * @param name name of a file or directory in the top level directory of a module.
+     * @return true if the entry holds release info or the release history.
+     */
+    public static boolean isReleaseInfo(String name) {
+        return RELEASE_INFO_FILE.equals(name) || RELEASE_INFO_DIRECTORY.equals(name)
+               || ReleaseHistory.HISTORY_FILE.equals(name);
+    }
+
+    /**
+     * @param path path of a file relative to the directory of the module owning it.
+     * @return true if the file holds release info or the release history, which only exist in the top level
+     * directory of a module.
+     */
+    public static boolean isReleaseInfoPath(String path) {
+        return RELEASE_INFO_FILE.equals(path) || ReleaseHistory.HISTORY_FILE.equals(path)
+               || path.startsWith(RELEASE_INFO_DIRECTORY + "/");
+    }
+
+    /**
+     * @param in stream of release info json, not closed.
+     * @return the release info, null if the stream is empty.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static ImmutableReleaseInfo read(InputStream in) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return GsonFactory.gson().fromJson(reader, ImmutableReleaseInfo.class);
+    }
+
+    /**
+     * @param reader reader of the repository.
+     * @param id id of a release info blob or of the tree of a sharded release info.
+     * @return the release info.
+     * @throws IOException if the objects cannot be read.
+     */
+    public static ImmutableReleaseInfo read(ObjectReader reader, AnyObjectId id) throws IOException {
+        final ObjectLoader loader = reader.open(id);
+        if (loader.getType() == Constants.OBJ_BLOB) {
+            try (InputStream in = loader.openStream()) {
+                return read(in);
+            }
+        }
+        final ImmutableReleaseInfo.Builder builder = ImmutableReleaseInfo.builder();
+        final List<ImmutableModuleVersion> modules = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(id);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                try (InputStream in = reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).openStream()) {
+                    if (RELEASE_SHARD.equals(treeWalk.getPathString())) {
+                        builder.tagName(read(in).getTagName());
+                    } else if (treeWalk.getPathString().endsWith(SHARD_SUFFIX)) {
+                        modules.add(readShard(in));
+                    }
+                }
+            }
+        }
+        modules.sort(BY_ARTIFACT);
+        return builder.addAllModules(modules).build();
+    }
+
+    /**
+     * @param reader reader of the repository.
+     * @param tree root tree of a commit.
+     * @return id of the release info blob or of the tree of the sharded release info, empty if there is none.
+     * @throws IOException if the tree cannot be read.
+     */
+    public static Optional<ObjectId> find(ObjectReader reader, RevTree tree) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, RELEASE_INFO_DIRECTORY, tree)) {
+            if (treeWalk != null && treeWalk.getFileMode(0) == FileMode.TREE) {
+                return Optional.of(treeWalk.getObjectId(0));
+            }
+        }
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, RELEASE_INFO_FILE, tree)) {
+            return treeWalk == null
+                   ? Optional.empty()
+                   : Optional.of(treeWalk.getObjectId(0));
+        }
+    }
+
+    /**
+     * @param repository the repository.
+     * @param reader reader of the repository.
+     * @param commit a commit.
+     * @return id of the release info note of the commit, empty if there is none.
+     * @throws IOException if the notes cannot be read.
+     */
+    public static Optional<ObjectId> findNote(Repository repository, ObjectReader reader, AnyObjectId commit) throws
+                                                                                                           IOException {
+        final Ref notesRef = repository.exactRef(NOTES_REF);
+        if (notesRef == null) {
+            return Optional.empty();
+        }
+        try (RevWalk walk = new RevWalk(reader)) {
+            final NoteMap notes = NoteMap.read(reader, walk.parseCommit(notesRef.getObjectId()));
+            return Optional.ofNullable(notes.get(commit));
+        }
+    }
+
+    /**
+     * @param releaseInfo release info to write.
+     * @param out stream to write the json to, not closed.
+     * @param compact write without pretty printing.
+     * @throws IOException if the stream cannot be written.
+     */
+    public static void write(ReleaseInfo releaseInfo, OutputStream out, boolean compact) throws IOException {
+        write(ImmutableReleaseInfo.copyOf(releaseInfo), ImmutableReleaseInfo.class, out, compact);
     }
 
     public ReleaseInfo load() throws MojoExecutionException {
+        final File shardDirectory = new File(baseDir, RELEASE_INFO_DIRECTORY);
+        if (shardDirectory.isDirectory()) {
+            return loadShards(shardDirectory);
+        }
         final File releaseInfoFile = new File(baseDir, RELEASE_INFO_FILE);
         ReleaseInfo previousRelease;
         if (releaseInfoFile.exists()) {
-            try {
-                final String json = org.apache.commons.io.FileUtils
-                                        .readFileToString(releaseInfoFile, StandardCharsets.UTF_8);
-                previousRelease = new GsonFactory().createGson().fromJson(json, ImmutableReleaseInfo.class);
+            try (InputStream in = new BufferedInputStream(new FileInputStream(releaseInfoFile))) {
+                previousRelease = read(in);
             } catch (Exception e) {
                 throw new MojoExecutionException("unable to read release info file " + releaseInfoFile
                                                                                            .getAbsolutePath(), e);
             }
         } else {
-            previousRelease = ImmutableReleaseInfo.builder().build();
+            try {
+                previousRelease = loadNote().orElseGet(() -> ImmutableReleaseInfo.builder().build());
+            } catch (IOException | RuntimeException e) {
+                throw new MojoExecutionException("unable to read release info from " + NOTES_REF, e);
+            }
         }
         return previousRelease;
     }
 
-    public void store(ImmutableReleaseInfo releaseInfo) {
-        final File releaseInfoFile = new File(baseDir, RELEASE_INFO_FILE);
+    /**
+     * Write the release info and commit it, together with the given files of the working tree.
+     *
+     * @param releaseInfo release info to store.
+     * @param additionalFiles names of further files in the project directory to commit, missing files are skipped.
+     * Ignored in the notes layout.
+     */
+    public void store(ImmutableReleaseInfo releaseInfo, String... additionalFiles) {
         try {
-            final Gson gson = new GsonFactory().createGson();
-            FileUtils.write(releaseInfoFile, gson.toJson(releaseInfo), StandardCharsets.UTF_8);
-            git.add().addFilepattern(RELEASE_INFO_FILE).call();
-            git.commit().setMessage("updating release versions").call();
+            final ReleaseCommit commit = new ReleaseCommit(git.getRepository());
+            if (layout == ReleaseInfoLayout.Notes) {
+                storeNote(releaseInfo, commit);
+                return;
+            }
+            if (layout == ReleaseInfoLayout.Sharded) {
+                storeShards(releaseInfo, commit);
+            } else {
+                storeFile(releaseInfo, commit);
+            }
+            for (String name : additionalFiles) {
+                final File file = new File(baseDir, name);
+                if (file.exists()) {
+                    commit.put(repositoryPath(name));
+                }
+            }
+            commit.commit("updating release versions");
         } catch (IOException | GitAPIException e) {
             throw new RuntimeException("unable to store and commit release info", e);
         }
     }
+
+    private void storeFile(ImmutableReleaseInfo releaseInfo, ReleaseCommit commit) throws IOException {
+        final File releaseInfoFile = new File(baseDir, RELEASE_INFO_FILE);
+        try (OutputStream out = new BufferedOutputStream(FileUtils.openOutputStream(releaseInfoFile))) {
+            write(releaseInfo, ImmutableReleaseInfo.class, out, compact);
+        }
+        commit.put(repositoryPath(RELEASE_INFO_FILE));
+        removeShards(commit);
+    }
+
+    private void storeShards(ImmutableReleaseInfo releaseInfo, ReleaseCommit commit) throws IOException {
+        final File shardDirectory = new File(baseDir, RELEASE_INFO_DIRECTORY);
+        final Set<File> shards = new HashSet<>();
+        final ImmutableReleaseInfo release = ImmutableReleaseInfo.builder().tagName(releaseInfo.getTagName()).build();
+        writeIfChanged(new File(shardDirectory, RELEASE_SHARD), toBytes(release, ImmutableReleaseInfo.class),
+                       commit);
+        for (ImmutableModuleVersion module : releaseInfo.getModules()) {
+            final File shard = shardFile(shardDirectory, module.getArtifact());
+            shards.add(shard);
+            writeIfChanged(shard, toBytes(module, ImmutableModuleVersion.class), commit);
+        }
+        for (File shard : listShards(shardDirectory)) {
+            if (!shards.contains(shard)) {
+                FileUtils.forceDelete(shard);
+                commit.delete(shardPath(shard));
+            }
+        }
+        removeFile(commit);
+    }
+
+    private void storeNote(ImmutableReleaseInfo releaseInfo, ReleaseCommit commit) throws IOException,
+                                                                                   GitAPIException {
+        final boolean removedFile = removeFile(commit);
+        final boolean removedShards = removeShards(commit);
+        if (removedFile || removedShards) {
+            commit.commit("moving release versions to " + NOTES_REF);
+        }
+        final Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            final RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            final String note = new String(toBytes(releaseInfo, ImmutableReleaseInfo.class), StandardCharsets.UTF_8);
+            git.notesAdd().setNotesRef(NOTES_REF).setObjectId(head).setMessage(note).call();
+        }
+    }
+
+    private Optional<ImmutableReleaseInfo> loadNote() throws IOException {
+        final Repository repository = git.getRepository();
+        final Ref notesRef = repository.exactRef(NOTES_REF);
+        final ObjectId head = repository.resolve(Constants.HEAD);
+        if (notesRef == null || head == null) {
+            return Optional.empty();
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            final NoteMap notes = NoteMap.read(walk.getObjectReader(), walk.parseCommit(notesRef.getObjectId()));
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(head));
+            for (RevCommit commit : walk) {
+                final ObjectId note = notes.get(commit);
+                if (note != null) {
+                    return Optional.of(read(walk.getObjectReader(), note));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean removeFile(ReleaseCommit commit) throws IOException {
+        final File releaseInfoFile = new File(baseDir, RELEASE_INFO_FILE);
+        if (!releaseInfoFile.exists()) {
+            return false;
+        }
+        FileUtils.forceDelete(releaseInfoFile);
+        commit.delete(repositoryPath(RELEASE_INFO_FILE));
+        return true;
+    }
+
+    private boolean removeShards(ReleaseCommit commit) throws IOException {
+        final File shardDirectory = new File(baseDir, RELEASE_INFO_DIRECTORY);
+        if (shardDirectory.exists()) {
+            final File releaseShard = new File(shardDirectory, RELEASE_SHARD);
+            if (releaseShard.exists()) {
+                commit.delete(shardPath(releaseShard));
+            }
+            for (File shard : listShards(shardDirectory)) {
+                commit.delete(shardPath(shard));
+            }
+            FileUtils.deleteDirectory(shardDirectory);
+            return true;
+        }
+        return false;
+    }
+
+    private ReleaseInfo loadShards(File shardDirectory) throws MojoExecutionException {
+        try {
+            final ImmutableReleaseInfo.Builder builder = ImmutableReleaseInfo.builder();
+            final File releaseShard = new File(shardDirectory, RELEASE_SHARD);
+            if (releaseShard.exists()) {
+                try (InputStream in = new BufferedInputStream(new FileInputStream(releaseShard))) {
+                    builder.tagName(read(in).getTagName());
+                }
+            }
+            final List<ImmutableModuleVersion> modules = listShards(shardDirectory)
+                                                             .parallelStream().map(ReleaseInfoStorage::readShard)
+                                                             .sorted(BY_ARTIFACT).collect(toList());
+            return builder.addAllModules(modules).build();
+        } catch (IOException | RuntimeException e) {
+            throw new MojoExecutionException("unable to read release info directory " + shardDirectory
+                                                                                            .getAbsolutePath(), e);
+        }
+    }
+
+    private static List<File> listShards(File shardDirectory) {
+        final List<File> shards = new ArrayList<>();
+        final File[] groups = shardDirectory.listFiles(File::isDirectory);
+        if (groups != null) {
+            for (File group : groups) {
+                final File[] files = group.listFiles((dir, name) -> name.endsWith(SHARD_SUFFIX));
+                if (files != null) {
+                    shards.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        return shards;
+    }
+
+    private static File shardFile(File shardDirectory, QualifiedArtifact artifact) {
+        return new File(new File(shardDirectory, artifact.getGroupId()), artifact.getArtifactId() + SHARD_SUFFIX);
+    }
+
+    private static ImmutableModuleVersion readShard(File shard) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(shard))) {
+            return readShard(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to read " + shard, e);
+        }
+    }
+
+    private static ImmutableModuleVersion readShard(InputStream in) {
+        final JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return GsonFactory.gson().fromJson(reader, ImmutableModuleVersion.class);
+    }
+
+    private <T> byte[] toBytes(T value, Class<T> type) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(value, type, out, compact);
+        return out.toByteArray();
+    }
+
+    private void writeIfChanged(File file, byte[] content, ReleaseCommit commit) throws IOException {
+        if (file.exists() && Arrays.equals(FileUtils.readFileToByteArray(file), content)) {
+            return;
+        }
+        FileUtils.writeByteArrayToFile(file, content);
+        commit.put(shardPath(file));
+    }
+
+    private String shardPath(File shard) throws IOException {
+        final Path directory = new File(baseDir, RELEASE_INFO_DIRECTORY).toPath();
+        return repositoryPath(RELEASE_INFO_DIRECTORY + "/" + directory.relativize(shard.toPath()).toString()
+                                                                       .replace(File.separatorChar, '/'));
+    }
+
+    /**
+     * @param name path relative to the project directory.
+     * @return the path relative to the root of the repository.
+     */
+    private String repositoryPath(String name) throws IOException {
+        final Path root = git.getRepository().getWorkTree().getCanonicalFile().toPath();
+        final String prefix = root.relativize(baseDir.getCanonicalFile().toPath()).toString()
+                                  .replace(File.separatorChar, '/');
+        return prefix.isEmpty()
+               ? name
+               : prefix + "/" + name;
+    }
+
+    private static <T> void write(T value, Class<T> type, OutputStream out, boolean compact) throws IOException {
+        final Gson gson = compact
+                          ? GsonFactory.compactGson()
+                          : GsonFactory.gson();
+        final JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        gson.toJson(value, type, writer);
+        writer.flush();
+    }
 }
@@ -0,0 +1,24 @@
+package de.hilling.maven.release.repository;
+
+import java.util.Map;
+
+import org.immutables.gson.Gson;
+import org.immutables.value.Value;
+
+/**
+ * Tags of a remote as answered by the last ls-remote, stored in the {@link RemoteTagCache}.
+ */
+@Gson.TypeAdapters
+@Value.Immutable
+public interface CachedRemoteTags {
+
+    /**
+     * @return time of the ls-remote in milliseconds since the epoch.
+     */
+    long getFetchedAt();
+
+    /**
+     * @return map of full tag ref name to the object id it points to on the remote.
+     */
+    Map<String, String> getTags();
+}
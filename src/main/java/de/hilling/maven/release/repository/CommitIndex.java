@@ -0,0 +1,329 @@
+package de.hilling.maven.release.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Generation numbers and changed path Bloom filters of commits, the information git keeps in its commit-graph file.
+ * <p>
+ * JGit 5 cannot read the commit-graph of git, so the plugin keeps its own index in the git directory. It is written by
+ * the {@code commit-index} goal and only read during change detection. Commits missing from the index, e.g. those
+ * created after it was written, are handled as if there was no index.
+ * </p>
+ * <p>
+ * The generation of a commit is one more than the highest generation of its parents, so a commit can never be reached
+ * from a commit with a lower or equal generation. The Bloom filter of a commit contains all paths changed against its
+ * first parent and all their parent directories. It never misses a changed path, but may report unchanged paths.
+ * </p>
+ */
+public class CommitIndex {
+    public static final  String INDEX_FILE         = "smart-release/commit-index-v1.bin";
+    /**
+     * Generation of commits missing from the index.
+     */
+    public static final  int    GENERATION_UNKNOWN = 0;
+    static final         int    MAX_CHANGED_PATHS  = 512;
+    private static final int    MAGIC              = 0x53524349;
+    private static final int    BITS_PER_ENTRY     = 10;
+    private static final int    NUM_HASHES         = 7;
+    private static final int    SEED_1             = 0x293ae76f;
+    private static final int    SEED_2             = 0x7e646e2c;
+
+    private final Map<ObjectId, Entry> entries;
+
+    private CommitIndex(Map<ObjectId, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static CommitIndex empty() {
+        return new CommitIndex(new HashMap<>());
+    }
+
+    /**
+     * @param gitDir git directory of the repository.
+     * @return index stored in the git directory, empty if there is none.
+     * @throws IOException if the index cannot be read.
+     */
+    public static CommitIndex load(File gitDir) throws IOException {
+        final File file = new File(gitDir, INDEX_FILE);
+        if (!file.exists()) {
+            return empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a commit index: " + file);
+            }
+            final int count = in.readInt();
+            final Map<ObjectId, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+            final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(id);
+                final int generation = in.readInt();
+                final int filterLength = in.readInt();
+                byte[] filter = null;
+                if (filterLength >= 0) {
+                    filter = new byte[filterLength];
+                    in.readFully(filter);
+                }
+                entries.put(ObjectId.fromRaw(id), new Entry(generation, filter));
+            }
+            return new CommitIndex(entries);
+        }
+    }
+
+    /**
+     * @param gitDir git directory of the repository.
+     * @throws IOException if the index cannot be written.
+     */
+    public void store(File gitDir) throws IOException {
+        final File file = new File(gitDir, INDEX_FILE);
+        FileUtils.forceMkdirParent(file);
+        final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            for (Map.Entry<ObjectId, Entry> entry : entries.entrySet()) {
+                entry.getKey().copyRawTo(id, 0);
+                out.write(id);
+                out.writeInt(entry.getValue().generation);
+                final byte[] filter = entry.getValue().filter;
+                out.writeInt(filter == null ? -1 : filter.length);
+                if (filter != null) {
+                    out.write(filter);
+                }
+            }
+        }
+        FileUtils.deleteQuietly(file);
+        FileUtils.moveFile(tempFile, file);
+    }
+
+    /**
+     * Add all commits reachable from the given commit that are missing from the index. The ancestors of indexed commits
+     * are indexed as well, so the history is only walked down to the indexed commits.
+     *
+     * @param reader reader of the repository.
+     * @param head commit to index the history of.
+     * @return number of commits added.
+     * @throws IOException on git exception.
+     */
+    public int refresh(ObjectReader reader, AnyObjectId head) throws IOException {
+        if (entries.containsKey(head.toObjectId())) {
+            return 0;
+        }
+        int added = 0;
+        try (RevWalk walk = new RevWalk(reader); TreeWalk treeWalk = new TreeWalk(reader)) {
+            walk.setRetainBody(false);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            for (RevCommit commit : missingCommits(walk, head)) {
+                int generation = 1;
+                for (RevCommit parent : commit.getParents()) {
+                    generation = Math.max(generation, entries.get(parent).generation + 1);
+                }
+                entries.put(commit.copy(), new Entry(generation, changedPathFilter(walk, treeWalk, commit)));
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Depth first search that does not follow the parents of indexed commits.
+     *
+     * @return commits missing from the index, each after all of its parents.
+     */
+    private List<RevCommit> missingCommits(RevWalk walk, AnyObjectId head) throws IOException {
+        final RevFlag done = walk.newFlag("done");
+        final List<RevCommit> missing = new ArrayList<>();
+        final Deque<RevCommit> pending = new ArrayDeque<>();
+        pending.push(walk.parseCommit(head));
+        while (!pending.isEmpty()) {
+            final RevCommit commit = pending.peek();
+            if (commit.has(done)) {
+                pending.pop();
+                continue;
+            }
+            boolean parentsDone = true;
+            for (RevCommit parent : commit.getParents()) {
+                if (!parent.has(done) && !entries.containsKey(parent)) {
+                    walk.parseHeaders(parent);
+                    pending.push(parent);
+                    parentsDone = false;
+                }
+            }
+            if (parentsDone) {
+                pending.pop();
+                commit.add(done);
+                missing.add(commit);
+            }
+        }
+        return missing;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(AnyObjectId commit) {
+        return entries.containsKey(commit);
+    }
+
+    /**
+     * @param commit commit to look up.
+     * @return generation of the commit, {@link #GENERATION_UNKNOWN} if it is not indexed.
+     */
+    public int generation(AnyObjectId commit) {
+        final Entry entry = entries.get(commit);
+        return entry == null ? GENERATION_UNKNOWN : entry.generation;
+    }
+
+    /**
+     * @param commit commit to look up.
+     * @return true if the commit has a changed path filter, i.e. {@link #mayHaveChanged(AnyObjectId, String)} can
+     * rule out changes.
+     */
+    public boolean hasChangedPaths(AnyObjectId commit) {
+        final Entry entry = entries.get(commit);
+        return entry != null && entry.filter != null;
+    }
+
+    /**
+     * @param commit commit to look up.
+     * @param path file or directory path relative to the repository root, without trailing slash.
+     * @return false if the path is definitely unchanged against the first parent of the commit.
+     */
+    public boolean mayHaveChanged(AnyObjectId commit, String path) {
+        final Entry entry = entries.get(commit);
+        if (entry == null || entry.filter == null) {
+            return true;
+        }
+        final byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        final int bits = entry.filter.length * 8;
+        final int hash1 = murmur3(key, SEED_1);
+        final int hash2 = murmur3(key, SEED_2);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            final int bit = Integer.remainderUnsigned(hash1 + i * hash2, bits);
+            if ((entry.filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Bloom filter of the paths changed against the first parent, null if too many paths changed.
+     */
+    private static byte[] changedPathFilter(RevWalk walk, TreeWalk treeWalk, RevCommit commit) throws IOException {
+        treeWalk.reset();
+        treeWalk.addTree(commit.getTree());
+        if (commit.getParentCount() == 0) {
+            treeWalk.addTree(new EmptyTreeIterator());
+        } else {
+            walk.parseHeaders(commit.getParent(0));
+            treeWalk.addTree(commit.getParent(0).getTree());
+        }
+        final Set<String> keys = new HashSet<>();
+        int changedPaths = 0;
+        while (treeWalk.next()) {
+            if (++changedPaths > MAX_CHANGED_PATHS) {
+                return null;
+            }
+            String path = treeWalk.getPathString();
+            while (keys.add(path) && path.lastIndexOf('/') > 0) {
+                path = path.substring(0, path.lastIndexOf('/'));
+            }
+        }
+        final byte[] filter = new byte[Math.max(8, (keys.size() * BITS_PER_ENTRY + 7) / 8)];
+        final int bits = filter.length * 8;
+        for (String key : keys) {
+            final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            final int hash1 = murmur3(bytes, SEED_1);
+            final int hash2 = murmur3(bytes, SEED_2);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                final int bit = Integer.remainderUnsigned(hash1 + i * hash2, bits);
+                filter[bit >>> 3] |= 1 << (bit & 7);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * 32 bit murmur3 hash, as used by the changed path filters of git.
+     */
+    static int murmur3(byte[] data, int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        final int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8 | (data[4 * i + 2] & 0xff) << 16
+                    | (data[4 * i + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13);
+            hash = hash * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        final int tail = blocks * 4;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xff) << 16;
+            case 2:
+                k ^= (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k ^= data[tail] & 0xff;
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                hash ^= k;
+            default:
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static final class Entry {
+        private final int    generation;
+        private final byte[] filter;
+
+        private Entry(int generation, byte[] filter) {
+            this.generation = generation;
+            this.filter = filter;
+        }
+    }
+}
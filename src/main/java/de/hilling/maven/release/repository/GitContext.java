@@ -0,0 +1,158 @@
+package de.hilling.maven.release.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+/**
+ * Shared access to the object database of a repository for the duration of a plugin execution.
+ * <p>
+ * Object readers are not thread safe, so every thread gets its own reader, which is kept until the context is closed.
+ * Its delta base cache and pack windows stay warm between the walks of different modules. Each walk is created for a
+ * single use on the reader of its thread, as walks rewrite the commits they parse, e.g. the parents of commits
+ * simplified by a tree filter or the bodies of commits parsed without retaining them.
+ * </p>
+ */
+public class GitContext implements AutoCloseable {
+
+    private final    Repository           repo;
+    private final    ThreadLocal<Session> sessions    = ThreadLocal.withInitial(this::newSession);
+    private final    List<Session>        allSessions = new ArrayList<>();
+    private          CommitIndex          commitIndex;
+    private volatile boolean              closed;
+
+    public GitContext(Repository repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Replace the global JGit window cache configuration. Values that are null keep the JGit defaults.
+     *
+     * @param packedGitLimit maximum number of bytes of pack files held in memory.
+     * @param deltaBaseCacheLimit maximum number of bytes of delta bases cached by each reader.
+     * @param packedGitMMAP use memory mapping to read pack files.
+     */
+    public static void configureWindowCache(Long packedGitLimit, Integer deltaBaseCacheLimit, Boolean packedGitMMAP) {
+        if (packedGitLimit == null && deltaBaseCacheLimit == null && packedGitMMAP == null) {
+            return;
+        }
+        final WindowCacheConfig config = new WindowCacheConfig();
+        if (packedGitLimit != null) {
+            config.setPackedGitLimit(packedGitLimit);
+        }
+        if (deltaBaseCacheLimit != null) {
+            config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        }
+        if (packedGitMMAP != null) {
+            config.setPackedGitMMAP(packedGitMMAP);
+        }
+        config.install();
+    }
+
+    public Repository getRepository() {
+        return repo;
+    }
+
+    /**
+     * @return commit index of the repository, loaded on first use. An unreadable index is ignored.
+     */
+    public synchronized CommitIndex commitIndex() {
+        if (commitIndex == null) {
+            try {
+                commitIndex = CommitIndex.load(repo.getDirectory());
+            } catch (IOException e) {
+                commitIndex = CommitIndex.empty();
+            }
+        }
+        return commitIndex;
+    }
+
+    /**
+     * @return reader of the calling thread. Must not be closed or passed to other threads.
+     * @throws IllegalStateException if the context is closed.
+     */
+    public ObjectReader reader() {
+        return session().reader;
+    }
+
+    /**
+     * Create a walk on the reader of the calling thread. The walk and the commits it parsed are dropped when the lease
+     * is closed, so neither filters nor rewritten commits leak into the next use.
+     *
+     * @return lease of a walk, to be closed on the calling thread.
+     * @throws IllegalStateException if the context is closed.
+     */
+    public WalkLease walk() {
+        return new WalkLease(new RevWalk(session().reader));
+    }
+
+    /**
+     * Close the readers of all threads. Readers and walks can no longer be obtained afterwards, also not by threads
+     * that still hold a session.
+     */
+    @Override
+    public void close() {
+        synchronized (allSessions) {
+            closed = true;
+            for (Session session : allSessions) {
+                session.reader.close();
+            }
+            allSessions.clear();
+        }
+        sessions.remove();
+    }
+
+    private Session session() {
+        checkOpen();
+        return sessions.get();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("git context of " + repo.getDirectory() + " is closed");
+        }
+    }
+
+    private Session newSession() {
+        synchronized (allSessions) {
+            checkOpen();
+            final Session session = new Session(repo.newObjectReader());
+            allSessions.add(session);
+            return session;
+        }
+    }
+
+    private static final class Session {
+        private final ObjectReader reader;
+
+        private Session(ObjectReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * A walk on the shared reader of a thread. {@link #close()} releases the walk only, the reader belongs to the
+     * context and stays open until the context is closed.
+     */
+    public static final class WalkLease implements AutoCloseable {
+        private final RevWalk walk;
+
+        private WalkLease(RevWalk walk) {
+            this.walk = walk;
+        }
+
+        public RevWalk get() {
+            return walk;
+        }
+
+        @Override
+        public void close() {
+            walk.close();
+        }
+    }
+}
@@ -2,10 +2,17 @@ package de.hilling.maven.release.repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -13,12 +20,20 @@ import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LsRemoteCommand;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.Transport;
 
 import de.hilling.maven.release.AnnotatedTag;
 import de.hilling.maven.release.exceptions.ValidationException;
@@ -26,14 +41,20 @@ import de.hilling.maven.release.utils.ReleaseFileUtils;
 
 public class LocalGitRepo {
 
-    public final  Git    git;
-    private final String remoteUrl;
-    private final Log    log;
+    public final  Git        git;
+    private final GitContext context;
+    private final String     remoteUrl;
+    private final Log        log;
     private boolean hasReverted = false; // A premature optimisation? In the normal case, file reverting occurs twice, which this bool prevents
-    private Collection<Ref> remoteTags;
+    private final Map<String, Ref> remoteTags      = new HashMap<>();
+    private final Set<String>      queriedPrefixes = new HashSet<>();
+    private final Set<String>      expectedTags    = new LinkedHashSet<>();
+    private       long             remoteTagCacheTtl;
+    private       RemoteTagCache   remoteTagCache;
 
     LocalGitRepo(Git git, String remoteUrl, Log log) {
         this.git = git;
+        this.context = new GitContext(git.getRepository());
         this.remoteUrl = remoteUrl;
         this.log = log;
     }
@@ -77,6 +98,22 @@ public class LocalGitRepo {
         return new LocalGitRepo(git, remoteUrl, log);
     }
 
+    /**
+     * @return shared readers and walks of this repository, closed after the plugin execution.
+     */
+    public GitContext context() {
+        return context;
+    }
+
+    /**
+     * @return maintenance of the release tags of this repository and its remote.
+     */
+    public ReleaseTags releaseTags() {
+        return new ReleaseTags(git, remoteUrl != null
+                                    ? remoteUrl
+                                    : Constants.DEFAULT_REMOTE_NAME);
+    }
+
     private static File getGitRootIfItExistsInOneOfTheParentDirectories(File candidateDir) {
         while (candidateDir != null && /* HACK ATTACK! Maybe.... */ !candidateDir.getName().equals("target")) {
             if (new File(candidateDir, ".git").isDirectory()) {
@@ -89,28 +126,58 @@ public class LocalGitRepo {
 
     public void errorIfNotClean() throws ValidationException {
         Status status = currentStatus();
-        boolean isClean = status.isClean();
-        if (!isClean) {
-            String summary = "Cannot release with uncommitted changes. Please check the following files:";
-            List<String> message = new ArrayList<>();
-            message.add(summary);
-            Set<String> uncommittedChanges = status.getUncommittedChanges();
-            if (uncommittedChanges.size() > 0) {
-                message.add("Uncommitted:");
-                for (String path : uncommittedChanges) {
-                    message.add(" * " + path);
-                }
+        if (!status.isClean()) {
+            errorNotClean(status.getUncommittedChanges(), status.getUntracked());
+        }
+    }
+
+    /**
+     * Check only some directories of the working tree, see {@link WorkingTreeCheck}.
+     *
+     * @param directories directories in the working tree. They are resolved like the working tree, so checkouts below
+     * symbolic links are handled.
+     * @param excludes patterns of paths below which untracked and ignored files are skipped.
+     * @param trustStat consider files unchanged whenever their stat data matches the index.
+     * @param threads number of threads to check directories with.
+     * @throws ValidationException if the directories are not clean.
+     */
+    public void errorIfNotClean(Collection<File> directories, Collection<String> excludes, boolean trustStat,
+                                int threads) throws ValidationException {
+        final WorkingTreeCheck.Result result;
+        try {
+            final File workTree = git.getRepository().getWorkTree().getCanonicalFile();
+            final Set<String> paths = new HashSet<>();
+            for (File directory : directories) {
+                paths.add(Repository.stripWorkDir(workTree, directory.getCanonicalFile()));
             }
-            Set<String> untracked = status.getUntracked();
-            if (untracked.size() > 0) {
-                message.add("Untracked:");
-                for (String path : untracked) {
-                    message.add(" * " + path);
-                }
+            result = new WorkingTreeCheck(git.getRepository(), excludes, trustStat, threads).check(paths);
+        } catch (IOException e) {
+            throw new ValidationException("Error while checking if the Git repo is clean", e);
+        }
+        if (!result.isClean()) {
+            errorNotClean(result.getUncommitted(), result.getUntracked());
+        }
+    }
+
+    private static void errorNotClean(Set<String> uncommittedChanges, Set<String> untracked) throws
+                                                                                          ValidationException {
+        String summary = "Cannot release with uncommitted changes. Please check the following files:";
+        List<String> message = new ArrayList<>();
+        message.add(summary);
+        if (uncommittedChanges.size() > 0) {
+            message.add("Uncommitted:");
+            for (String path : uncommittedChanges) {
+                message.add(" * " + path);
+            }
+        }
+        if (untracked.size() > 0) {
+            message.add("Untracked:");
+            for (String path : untracked) {
+                message.add(" * " + path);
             }
-            message.add("Please commit or revert these changes before releasing.");
-            throw new ValidationException(summary, message);
         }
+        message.add("Please commit or revert these changes before releasing.");
+        throw new ValidationException(summary, message);
     }
 
     private Status currentStatus() throws ValidationException {
@@ -121,24 +188,68 @@ public class LocalGitRepo {
         }
     }
 
+    /**
+     * Revert changes to files. The status of all files is computed with a single scan of the working tree, tracked files
+     * are restored from the index with a single checkout, and untracked files are deleted.
+     *
+     * @param log log to report files that could not be reverted to.
+     * @param changedFiles files to revert.
+     * @return true if all files were reverted.
+     * @throws MojoExecutionException if the working directory cannot be located.
+     */
     public boolean revertChanges(Log log, List<File> changedFiles) throws MojoExecutionException {
         if (hasReverted) {
             return true;
         }
         boolean hasErrors = false;
-        File workTree = workingDir();
+        final File workTree = workingDir();
+        final Map<String, File> files = new LinkedHashMap<>();
         for (File changedFile : changedFiles) {
+            final String path = Repository.stripWorkDir(workTree, changedFile);
+            if (path.isEmpty()) {
+                hasErrors = true;
+                log.error("Unable to revert changes to " + changedFile + " - it is not in the working tree of the Git "
+                          + "repo");
+            } else {
+                files.put(path, changedFile);
+            }
+        }
+        if (!files.isEmpty()) {
+            final Set<String> untracked;
             try {
-                String pathRelativeToWorkingTree = Repository.stripWorkDir(workTree, changedFile);
-                if(git.status().addPath(pathRelativeToWorkingTree).call().getUntracked().isEmpty()) {
-                    git.checkout().addPath(pathRelativeToWorkingTree).call();
-                } else {
-                    FileUtils.forceDelete(changedFile);
-                }
+                final StatusCommand status = git.status();
+                files.keySet().forEach(status::addPath);
+                untracked = status.call().getUntracked();
             } catch (Exception e) {
-                hasErrors = true;
-                log.error(
-                    "Unable to revert changes to " + changedFile + " - you may need to manually revert this file. Error was: " + e.getMessage());
+                log.error("Unable to revert changes - you may need to manually revert these files: " + files.values()
+                          + ". Error was: " + e.getMessage());
+                hasReverted = true;
+                return false;
+            }
+            final List<String> tracked = new ArrayList<>();
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                if (!untracked.contains(file.getKey())) {
+                    tracked.add(file.getKey());
+                    continue;
+                }
+                try {
+                    FileUtils.forceDelete(file.getValue());
+                } catch (IOException e) {
+                    hasErrors = true;
+                    log.error("Unable to revert changes to " + file.getValue()
+                              + " - you may need to manually revert this file. Error was: " + e.getMessage());
+                }
+            }
+            if (!tracked.isEmpty()) {
+                try {
+                    git.checkout().addPaths(tracked).call();
+                } catch (Exception e) {
+                    hasErrors = true;
+                    for (String path : tracked) {
+                        log.error("Unable to revert changes to " + files.get(path)
+                                  + " - you may need to manually revert this file. Error was: " + e.getMessage());
+                    }
+                }
             }
         }
         hasReverted = true;
@@ -157,24 +268,132 @@ public class LocalGitRepo {
         tag.saveAtHEAD(git);
     }
 
-    public Optional<Ref> getRemoteTag(String tagName) throws GitAPIException {
-        Collection<Ref> remoteTags = allRemoteTags();
-        for (Ref remoteTag : remoteTags) {
-            if (remoteTag.getName().equals("refs/tags/" + tagName)) {
-                return Optional.of(remoteTag);
+    /**
+     * Resolve a release tag. A local tag is used as long as the remote is not known to point it to another object,
+     * only tags missing locally are looked up remotely. The answers of the remote are cached on disk, see
+     * {@link #setRemoteTagCacheTtl(long)}.
+     *
+     * @param tagName name of the tag.
+     * @return the tag, empty if it exists neither locally nor remotely.
+     * @throws GitAPIException if the remote cannot be queried.
+     */
+    public synchronized Optional<Ref> getRemoteTag(String tagName) throws GitAPIException {
+        final String refName = Constants.R_TAGS + tagName;
+        final Optional<ObjectId> cachedRemoteId = remoteTagCache().lookup(remoteName(), refName);
+        final Ref localTag = localTag(refName);
+        if (localTag != null && (!cachedRemoteId.isPresent() || cachedRemoteId.get().equals(localTag.getObjectId()))) {
+            return Optional.of(localTag);
+        }
+        if (cachedRemoteId.isPresent()) {
+            return Optional.of(new ObjectIdRef.Unpeeled(Ref.Storage.NETWORK, refName, cachedRemoteId.get()));
+        }
+        return Optional.ofNullable(remoteTag(refName));
+    }
+
+    /**
+     * Announce tags that are going to be resolved, so that a single remote query covers all of them.
+     *
+     * @param tagNames names of the tags.
+     */
+    public synchronized void expectTags(Collection<String> tagNames) {
+        expectedTags.addAll(tagNames);
+    }
+
+    /**
+     * @param ttlSeconds time in seconds answers of ls-remote are cached in the git directory, 0 to disable the cache.
+     */
+    public void setRemoteTagCacheTtl(long ttlSeconds) {
+        this.remoteTagCacheTtl = ttlSeconds;
+        this.remoteTagCache = null;
+    }
+
+    private Ref localTag(String refName) {
+        try {
+            return git.getRepository().exactRef(refName);
+        } catch (IOException e) {
+            log.warn("unable to read local tag " + refName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String remoteName() {
+        if (remoteUrl != null) {
+            return remoteUrl;
+        }
+        final String url = git.getRepository().getConfig().getString("remote", Constants.DEFAULT_REMOTE_NAME, "url");
+        return url != null
+               ? url
+               : Constants.DEFAULT_REMOTE_NAME;
+    }
+
+    private RemoteTagCache remoteTagCache() {
+        if (remoteTagCache == null) {
+            remoteTagCache = new RemoteTagCache(git.getRepository().getDirectory(), remoteTagCacheTtl, log);
+        }
+        return remoteTagCache;
+    }
+
+    private Ref remoteTag(String refName) throws GitAPIException {
+        if (!isQueried(refName)) {
+            final Set<String> prefixes = new LinkedHashSet<>();
+            if (expectedTags.contains(Repository.shortenRefName(refName))) {
+                for (String tagName : expectedTags) {
+                    final String expectedRef = Constants.R_TAGS + tagName;
+                    if (!isQueried(expectedRef) && localTag(expectedRef) == null) {
+                        prefixes.add(expectedRef);
+                    }
+                }
+            } else if (refName.startsWith(ReleaseTags.RELEASE_TAG_PREFIX)) {
+                prefixes.add(ReleaseTags.RELEASE_TAG_PREFIX);
+            }
+            prefixes.add(refName);
+            queryRemoteTags(prefixes);
+        }
+        return remoteTags.get(refName);
+    }
+
+    private boolean isQueried(String refName) {
+        for (String prefix : queriedPrefixes) {
+            if (refName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * List the remote tags starting with the given prefixes. Servers speaking protocol v2 only send the matching refs,
+     * the refs of other servers are filtered here.
+     */
+    private void queryRemoteTags(Set<String> prefixes) throws GitAPIException {
+        final String remote = remoteUrl != null
+                              ? remoteUrl
+                              : Constants.DEFAULT_REMOTE_NAME;
+        final Collection<Ref> found = new ArrayList<>();
+        try (Transport transport = Transport.open(git.getRepository(), remote);
+             FetchConnection connection = transport.openFetch(Collections.emptyList(),
+                                                              prefixes.toArray(new String[0]))) {
+            for (Ref ref : connection.getRefs()) {
+                if (startsWithAny(ref.getName(), prefixes)) {
+                    remoteTags.put(ref.getName(), ref);
+                    found.add(ref);
+                }
             }
+        } catch (URISyntaxException e) {
+            throw new InvalidRemoteException("invalid remote: " + remote, e);
+        } catch (NotSupportedException | org.eclipse.jgit.errors.TransportException e) {
+            throw new TransportException(e.getMessage(), e);
         }
-        return Optional.empty();
+        queriedPrefixes.addAll(prefixes);
+        remoteTagCache().update(remoteName(), found);
     }
 
-    private Collection<Ref> allRemoteTags() throws GitAPIException {
-        if (remoteTags == null) {
-            LsRemoteCommand lsRemoteCommand = git.lsRemote().setTags(true).setHeads(false);
-            if (remoteUrl != null) {
-                lsRemoteCommand.setRemote(remoteUrl);
+    private static boolean startsWithAny(String name, Set<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
             }
-            remoteTags = lsRemoteCommand.call();
         }
-        return remoteTags;
+        return false;
     }
 }
@@ -0,0 +1,249 @@
+package de.hilling.maven.release.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.RefDirectory;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+
+import de.hilling.maven.release.versioning.ReleaseDateSingleton;
+
+/**
+ * Maintenance of the release tags of a repository.
+ * <p>
+ * Every release adds an annotated tag, carrying the released modules and a reference to the release info, so old
+ * repositories accumulate many tags. Each of them is sent with every ref advertisement and, while loose, stored in a
+ * file of its own. Tags that are no longer referenced by the current release info can be deleted, or archived below
+ * {@link #ARCHIVE_PREFIX}, where they keep their objects reachable but are no longer listed with the tags.
+ * </p>
+ */
+public class ReleaseTags {
+    public static final  String RELEASE_TAG_PREFIX = Constants.R_TAGS + ReleaseDateSingleton.TAG_PREFIX;
+    public static final  String ARCHIVE_PREFIX     = "refs/archive/tags/";
+    /**
+     * Length of the pkt-line header and the object id followed by a space in a ref advertisement.
+     */
+    private static final int    ADVERTISED_ID_SIZE = 4 + Constants.OBJECT_ID_STRING_LENGTH + 1;
+
+    private final Git    git;
+    private final String remote;
+
+    ReleaseTags(Git git, String remote) {
+        this.git = git;
+        this.remote = remote;
+    }
+
+    /**
+     * @param referencedTags names of the tags still referenced by the release info.
+     * @return summary of the release tags and the refs that could be packed.
+     * @throws IOException if the refs or tag objects cannot be read.
+     */
+    public Summary summarize(Collection<String> referencedTags) throws IOException {
+        final Repository repo = git.getRepository();
+        final List<Ref> unreferenced = new ArrayList<>();
+        int releaseTags = 0;
+        long advertisedBytes = 0;
+        long tagObjectBytes = 0;
+        try (ObjectReader reader = repo.newObjectReader()) {
+            for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RELEASE_TAG_PREFIX)) {
+                releaseTags++;
+                if (referencedTags.contains(Repository.shortenRefName(ref.getName()))) {
+                    continue;
+                }
+                unreferenced.add(ref);
+                final Ref peeled = repo.getRefDatabase().peel(ref);
+                advertisedBytes += advertisedSize(ref.getName());
+                if (peeled.getPeeledObjectId() != null) {
+                    advertisedBytes += advertisedSize(ref.getName() + "^{}");
+                    tagObjectBytes += reader.getObjectSize(ref.getObjectId(), Constants.OBJ_TAG);
+                }
+            }
+        }
+        final List<String> looseRefs = new ArrayList<>();
+        long looseRefBytes = 0;
+        for (Ref ref : repo.getRefDatabase().getRefsByPrefix(Constants.R_REFS)) {
+            if (!ref.isSymbolic() && ref.getStorage() == Ref.Storage.LOOSE) {
+                looseRefs.add(ref.getName());
+                looseRefBytes += new File(repo.getDirectory(), ref.getName()).length();
+            }
+        }
+        return new Summary(releaseTags, unreferenced, advertisedBytes, tagObjectBytes, looseRefs, looseRefBytes);
+    }
+
+    /**
+     * Remove the given tags.
+     *
+     * @param tags tags to remove.
+     * @param onRemote also remove the tags from the remote.
+     * @throws IOException if the local refs cannot be updated.
+     * @throws GitAPIException if the remote cannot be updated.
+     */
+    public void delete(List<Ref> tags, boolean onRemote) throws IOException, GitAPIException {
+        final BatchRefUpdate update = git.getRepository().getRefDatabase().newBatchUpdate();
+        final List<RefSpec> refSpecs = new ArrayList<>();
+        for (Ref tag : tags) {
+            update.addCommand(new ReceiveCommand(tag.getObjectId(), ObjectId.zeroId(), tag.getName()));
+            refSpecs.add(new RefSpec(":" + tag.getName()));
+        }
+        execute(update);
+        if (onRemote) {
+            push(refSpecs);
+        }
+    }
+
+    /**
+     * Move the given tags below {@link #ARCHIVE_PREFIX}.
+     *
+     * @param tags tags to archive.
+     * @param onRemote also archive the tags on the remote.
+     * @throws IOException if the local refs cannot be updated.
+     * @throws GitAPIException if the remote cannot be updated.
+     */
+    public void archive(List<Ref> tags, boolean onRemote) throws IOException, GitAPIException {
+        final BatchRefUpdate update = git.getRepository().getRefDatabase().newBatchUpdate();
+        final List<RefSpec> refSpecs = new ArrayList<>();
+        for (Ref tag : tags) {
+            final String archivedName = archivedName(tag.getName());
+            update.addCommand(new ReceiveCommand(ObjectId.zeroId(), tag.getObjectId(), archivedName));
+            update.addCommand(new ReceiveCommand(tag.getObjectId(), ObjectId.zeroId(), tag.getName()));
+            refSpecs.add(new RefSpec(archivedName + ":" + archivedName));
+            refSpecs.add(new RefSpec(":" + tag.getName()));
+        }
+        execute(update);
+        if (onRemote) {
+            push(refSpecs);
+        }
+    }
+
+    /**
+     * Move all loose refs into the packed-refs file. Repositories using another ref storage are left unchanged.
+     *
+     * @param refNames names of the loose refs.
+     * @return true if the refs have been packed.
+     * @throws IOException if the refs cannot be packed.
+     */
+    public boolean pack(List<String> refNames) throws IOException {
+        final RefDatabase refDatabase = git.getRepository().getRefDatabase();
+        if (!(refDatabase instanceof RefDirectory)) {
+            return false;
+        }
+        if (!refNames.isEmpty()) {
+            ((RefDirectory) refDatabase).pack(refNames);
+        }
+        return true;
+    }
+
+    static String archivedName(String tagRefName) {
+        return ARCHIVE_PREFIX + tagRefName.substring(Constants.R_TAGS.length());
+    }
+
+    private static int advertisedSize(String refName) {
+        return ADVERTISED_ID_SIZE + refName.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private void execute(BatchRefUpdate update) throws IOException {
+        if (update.getCommands().isEmpty()) {
+            return;
+        }
+        update.setAtomic(false);
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            update.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (ReceiveCommand command : update.getCommands()) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                throw new IOException("unable to update " + command.getRefName() + ": " + command.getResult());
+            }
+        }
+    }
+
+    private void push(List<RefSpec> refSpecs) throws GitAPIException, IOException {
+        if (refSpecs.isEmpty()) {
+            return;
+        }
+        final Iterable<PushResult> results = git.push().setRemote(remote).setRefSpecs(refSpecs).call();
+        for (PushResult result : results) {
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                if (update.getStatus() != RemoteRefUpdate.Status.OK
+                    && update.getStatus() != RemoteRefUpdate.Status.NON_EXISTING) {
+                    throw new IOException("unable to update remote ref " + update.getRemoteName() + ": "
+                                          + update.getStatus());
+                }
+            }
+        }
+    }
+
+    /**
+     * Release tags found and the savings of removing the unreferenced ones and packing the loose refs.
+     */
+    public static final class Summary {
+        private final int          releaseTags;
+        private final List<Ref>    unreferencedTags;
+        private final long         advertisedBytes;
+        private final long         tagObjectBytes;
+        private final List<String> looseRefs;
+        private final long         looseRefBytes;
+
+        private Summary(int releaseTags, List<Ref> unreferencedTags, long advertisedBytes, long tagObjectBytes,
+                        List<String> looseRefs, long looseRefBytes) {
+            this.releaseTags = releaseTags;
+            this.unreferencedTags = Collections.unmodifiableList(unreferencedTags);
+            this.advertisedBytes = advertisedBytes;
+            this.tagObjectBytes = tagObjectBytes;
+            this.looseRefs = Collections.unmodifiableList(looseRefs);
+            this.looseRefBytes = looseRefBytes;
+        }
+
+        public int getReleaseTags() {
+            return releaseTags;
+        }
+
+        public List<Ref> getUnreferencedTags() {
+            return unreferencedTags;
+        }
+
+        /**
+         * @return bytes the unreferenced tags add to every ref advertisement of the repository.
+         */
+        public long getAdvertisedBytes() {
+            return advertisedBytes;
+        }
+
+        /**
+         * @return uncompressed size of the tag objects of the unreferenced tags, freed by garbage collection once the
+         * tags are deleted.
+         */
+        public long getTagObjectBytes() {
+            return tagObjectBytes;
+        }
+
+        public List<String> getLooseRefs() {
+            return looseRefs;
+        }
+
+        /**
+         * @return size of the files of the loose refs, not counting file system overhead.
+         */
+        public long getLooseRefBytes() {
+            return looseRefBytes;
+        }
+    }
+}
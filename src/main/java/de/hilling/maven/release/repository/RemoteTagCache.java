@@ -0,0 +1,121 @@
+package de.hilling.maven.release.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import de.hilling.maven.release.versioning.GsonFactory;
+
+/**
+ * Answers of ls-remote per remote, kept in the git directory for a limited time.
+ * <p>
+ * Only tags found on the remote are answered from the cache. A tag missing from the cached answer may have been
+ * pushed since, so it always has to be looked up remotely.
+ * </p>
+ */
+class RemoteTagCache {
+    static final String CACHE_FILE = "smart-release/remote-tags-v1.json";
+
+    private static final Type ENTRIES_TYPE = new TypeToken<Map<String, ImmutableCachedRemoteTags>>() {
+    }.getType();
+    private static final Gson GSON         = GsonFactory.gson().newBuilder()
+                                                        .registerTypeAdapterFactory(new GsonAdaptersCachedRemoteTags())
+                                                        .create();
+
+    private final File                                   file;
+    private final long                                   ttlMillis;
+    private final Log                                    log;
+    private       Map<String, ImmutableCachedRemoteTags> entries;
+
+    /**
+     * @param gitDir git directory of the repository.
+     * @param ttlSeconds time in seconds the answers of a remote are valid, 0 to disable the cache.
+     * @param log maven logger.
+     */
+    RemoteTagCache(File gitDir, long ttlSeconds, Log log) {
+        this.file = new File(gitDir, CACHE_FILE);
+        this.ttlMillis = ttlSeconds * 1000;
+        this.log = log;
+    }
+
+    /**
+     * @param remote url or name of the remote.
+     * @param refName full name of the tag ref.
+     * @return object id of the tag on the remote, empty if unknown or expired.
+     */
+    Optional<ObjectId> lookup(String remote, String refName) {
+        if (ttlMillis <= 0) {
+            return Optional.empty();
+        }
+        final ImmutableCachedRemoteTags cached = entries().get(remote);
+        if (cached == null || System.currentTimeMillis() - cached.getFetchedAt() >= ttlMillis) {
+            return Optional.empty();
+        }
+        final String id = cached.getTags().get(refName);
+        return id != null && ObjectId.isId(id)
+               ? Optional.of(ObjectId.fromString(id))
+               : Optional.empty();
+    }
+
+    /**
+     * Add the answer of ls-remote to the cached answers of the remote, failures are logged only. Answers that are
+     * still valid are kept and expire with their original time.
+     *
+     * @param remote url or name of the remote.
+     * @param remoteTags tags returned by ls-remote.
+     */
+    void update(String remote, Collection<Ref> remoteTags) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final ImmutableCachedRemoteTags previous = entries().get(remote);
+        final boolean keepPrevious = previous != null && now - previous.getFetchedAt() < ttlMillis;
+        final Map<String, String> tags = new HashMap<>();
+        if (keepPrevious) {
+            tags.putAll(previous.getTags());
+        }
+        for (Ref tag : remoteTags) {
+            tags.put(tag.getName(), tag.getObjectId().name());
+        }
+        entries().put(remote, ImmutableCachedRemoteTags.builder().fetchedAt(keepPrevious
+                                                                            ? previous.getFetchedAt()
+                                                                            : now).tags(tags).build());
+        try {
+            FileUtils.write(file, GSON.toJson(entries, ENTRIES_TYPE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("unable to store remote tag cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, ImmutableCachedRemoteTags> entries() {
+        if (entries == null) {
+            entries = new HashMap<>();
+            if (file.exists()) {
+                try {
+                    final Map<String, ImmutableCachedRemoteTags> loaded = GSON.fromJson(
+                        FileUtils.readFileToString(file, StandardCharsets.UTF_8), ENTRIES_TYPE);
+                    if (loaded != null) {
+                        entries.putAll(loaded);
+                    }
+                } catch (Exception e) {
+                    log.warn("ignoring unreadable remote tag cache " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return entries;
+    }
+}
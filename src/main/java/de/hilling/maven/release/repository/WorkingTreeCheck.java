@@ -0,0 +1,261 @@
+package de.hilling.maven.release.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.ignore.FastIgnoreRule;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+/**
+ * Checks whether some directories of the working tree are clean, like {@code git status} restricted to these paths.
+ * <p>
+ * Each directory is compared with the index and HEAD on its own thread. If the root directory is checked, its files
+ * are compared on the calling thread and each top level directory is checked on its own. Ignored directories without
+ * tracked files are not entered. Below directories matching one of the exclude patterns, which use the syntax of
+ * {@code .gitignore}, only tracked files are checked.
+ * </p>
+ * <p>
+ * Files whose size and modification time match the index are considered unchanged. Unless index stat data is trusted,
+ * the content of files modified too shortly after the index was written is compared as well, like git does.
+ * </p>
+ */
+public class WorkingTreeCheck {
+
+    private final Repository           repository;
+    private final List<FastIgnoreRule> excludes = new ArrayList<>();
+    private final boolean              trustStat;
+    private final int                  threads;
+
+    /**
+     * @param repository repository to check.
+     * @param excludes patterns of paths below which untracked and ignored files are skipped.
+     * @param trustStat consider files unchanged whenever their stat data matches the index.
+     * @param threads number of threads to check directories with.
+     */
+    public WorkingTreeCheck(Repository repository, Collection<String> excludes, boolean trustStat, int threads) {
+        this.repository = repository;
+        for (String exclude : excludes) {
+            this.excludes.add(new FastIgnoreRule(exclude));
+        }
+        this.trustStat = trustStat;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param directories directories relative to the root of the working tree, the empty string for the root.
+     * @return uncommitted and untracked files in the directories.
+     * @throws IOException if the repository or the working tree cannot be read.
+     */
+    public Result check(Collection<String> directories) throws IOException {
+        final Result result = new Result();
+        final DirCache dirCache = repository.readDirCache();
+        // build the tree cache before the iterators share the index
+        dirCache.getCacheTree(true);
+        final ObjectId headTree = headTree();
+        final List<String> units = new ArrayList<>();
+        final Set<String> topLevel = topLevel(directories);
+        if (topLevel.contains("")) {
+            scan(dirCache, headTree, "", units, result);
+        } else {
+            units.addAll(topLevel);
+        }
+        if (units.size() <= 1 || threads == 1) {
+            for (String unit : units) {
+                scan(dirCache, headTree, unit, null, result);
+            }
+            return result;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, units.size()));
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (String unit : units) {
+                futures.add(executor.submit(() -> {
+                    scan(dirCache, headTree, unit, null, result);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while checking the working tree", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("unable to check the working tree", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Compare the files below a directory.
+     *
+     * @param directory directory to compare, the empty string for the root.
+     * @param subdirectories if not null, only the files directly in the directory are compared, its subdirectories
+     * are added to this list instead.
+     */
+    private void scan(DirCache dirCache, ObjectId headTree, String directory, List<String> subdirectories,
+                      Result result) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader(); TreeWalk walk = new TreeWalk(repository, reader)) {
+            if (headTree == null) {
+                walk.addTree(new EmptyTreeIterator());
+            } else {
+                walk.addTree(headTree);
+            }
+            walk.addTree(new DirCacheIterator(dirCache));
+            final FileTreeIterator workingTree = new FileTreeIterator(repository);
+            walk.addTree(workingTree);
+            workingTree.setDirCacheIterator(walk, 1);
+            if (!directory.isEmpty()) {
+                walk.setFilter(PathFilter.create(directory));
+            }
+            int excludedDepth = -1;
+            while (walk.next()) {
+                if (excludedDepth >= 0 && walk.getDepth() <= excludedDepth) {
+                    excludedDepth = -1;
+                }
+                final String path = walk.getPathString();
+                final boolean aboveDirectory = directory.length() > path.length();
+                final AbstractTreeIterator head = walk.getTree(0, AbstractTreeIterator.class);
+                final DirCacheIterator index = walk.getTree(1, DirCacheIterator.class);
+                final WorkingTreeIterator work = walk.getTree(2, WorkingTreeIterator.class);
+                if (walk.isSubtree()) {
+                    if (aboveDirectory) {
+                        walk.enterSubtree();
+                        continue;
+                    }
+                    final boolean excluded = excludedDepth >= 0 || isExcluded(path, true);
+                    final boolean tracked = index != null || head != null;
+                    if (!tracked && (excluded || work == null || work.isEntryIgnored())) {
+                        continue;
+                    }
+                    if (subdirectories != null) {
+                        subdirectories.add(path);
+                        continue;
+                    }
+                    if (excluded && excludedDepth < 0) {
+                        excludedDepth = walk.getDepth();
+                    }
+                    walk.enterSubtree();
+                    continue;
+                }
+                if (index == null) {
+                    if (head != null) {
+                        result.uncommitted.add(path);
+                    } else if (work != null && excludedDepth < 0 && !isExcluded(path, false)
+                               && !work.isEntryIgnored()) {
+                        result.untracked.add(path);
+                    }
+                    continue;
+                }
+                final DirCacheEntry entry = index.getDirCacheEntry();
+                if (entry == null || FileMode.GITLINK.equals(entry.getFileMode())) {
+                    continue;
+                }
+                if (head == null || !head.getEntryObjectId().equals(entry.getObjectId())
+                    || head.getEntryRawMode() != entry.getRawMode() || work == null
+                    || isModified(entry, work, reader)) {
+                    result.uncommitted.add(path);
+                }
+            }
+        }
+    }
+
+    private boolean isModified(DirCacheEntry entry, WorkingTreeIterator work, ObjectReader reader) throws
+                                                                                                  IOException {
+        if (trustStat) {
+            final WorkingTreeIterator.MetadataDiff diff = work.compareMetadata(entry);
+            if (diff == WorkingTreeIterator.MetadataDiff.EQUAL || diff == WorkingTreeIterator.MetadataDiff.SMUDGED) {
+                return false;
+            }
+        }
+        return work.isModified(entry, false, reader);
+    }
+
+    private boolean isExcluded(String path, boolean directory) {
+        for (FastIgnoreRule exclude : excludes) {
+            if (exclude.isMatch(path, directory) && exclude.getResult()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ObjectId headTree() throws IOException {
+        final ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return null;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            return walk.parseCommit(head).getTree().getId();
+        }
+    }
+
+    /**
+     * @return the directories that are not below one of the others.
+     */
+    private static Set<String> topLevel(Collection<String> directories) {
+        final Set<String> topLevel = new TreeSet<>();
+        for (String directory : new TreeSet<>(directories)) {
+            final boolean nested = topLevel.stream().anyMatch(
+                parent -> parent.isEmpty() || directory.equals(parent) || directory.startsWith(parent + "/"));
+            if (!nested) {
+                topLevel.add(directory);
+            }
+        }
+        return topLevel;
+    }
+
+    /**
+     * Uncommitted and untracked files found by a check.
+     */
+    public static class Result {
+        private final Set<String> uncommitted = new ConcurrentSkipListSet<>();
+        private final Set<String> untracked   = new ConcurrentSkipListSet<>();
+
+        public boolean isClean() {
+            return uncommitted.isEmpty() && untracked.isEmpty();
+        }
+
+        /**
+         * @return files that differ between HEAD, the index and the working tree.
+         */
+        public Set<String> getUncommitted() {
+            return uncommitted;
+        }
+
+        /**
+         * @return files that are neither tracked nor ignored.
+         */
+        public Set<String> getUntracked() {
+            return untracked;
+        }
+    }
+}
@@ -5,6 +5,9 @@ package de.hilling.maven.release.utils;
  */
 public interface Constants {
 
-    String MODULE_BUILD_FILE = "modules-to-build.txt";
-    String FILES_TO_REVERT   = "files-to-revert.txt";
+    String MODULE_BUILD_FILE     = "modules-to-build.txt";
+    String FILES_TO_REVERT       = "files-to-revert.txt";
+    String RELEASE_POM           = "release-pom.xml";
+    String RELEASE_REACTOR_POM   = "release-reactor/pom.xml";
+    String IN_MEMORY_RELEASE_POM = ".release-pom.xml";
 }
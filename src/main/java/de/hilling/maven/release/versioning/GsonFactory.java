@@ -8,11 +8,40 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
 
-import de.hilling.maven.release.GsonAdaptersReleasableModule;
+/**
+ * Gson instances knowing the value types of the release info. Building the type adapters is expensive, so the
+ * instances are created once and shared. Gson is thread safe.
+ * <p>
+ * Value types of other packages are not known here. Their packages derive instances of their own with
+ * {@link Gson#newBuilder()} and register their type adapters on them.
+ * </p>
+ */
+public final class GsonFactory {
+    private static final Gson PRETTY_GSON  = createGson(true);
+    private static final Gson COMPACT_GSON = createGson(false);
 
-public class GsonFactory {
-    public Gson createGson() {
-        final GsonBuilder builder = new GsonBuilder().setPrettyPrinting();
+    private GsonFactory() {
+    }
+
+    /**
+     * @return shared instance writing pretty printed json.
+     */
+    public static Gson gson() {
+        return PRETTY_GSON;
+    }
+
+    /**
+     * @return shared instance writing json without any whitespace.
+     */
+    public static Gson compactGson() {
+        return COMPACT_GSON;
+    }
+
+    private static Gson createGson(boolean prettyPrinting) {
+        final GsonBuilder builder = new GsonBuilder();
+        if (prettyPrinting) {
+            builder.setPrettyPrinting();
+        }
         builder.registerTypeAdapter(ZonedDateTime.class,
                                     (JsonDeserializer<ZonedDateTime>) (json, type, jsonDeserializationContext) -> ZonedDateTime
                                                                                                           .parse(json.getAsJsonPrimitive().getAsString()));
@@ -25,7 +54,6 @@ public class GsonFactory {
         builder.registerTypeAdapterFactory(new GsonAdaptersReleaseInfo());
         builder.registerTypeAdapterFactory(new GsonAdaptersModuleVersion());
         builder.registerTypeAdapterFactory(new GsonAdaptersQualifiedArtifact());
-        builder.registerTypeAdapterFactory(new GsonAdaptersReleasableModule());
         builder.registerTypeAdapterFactory(new GsonAdaptersFixVersion());
         builder.registerTypeAdapterFactory(new GsonAdaptersSnapshotVersion());
         return builder.create();
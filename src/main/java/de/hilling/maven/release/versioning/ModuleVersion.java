@@ -1,6 +1,7 @@
 package de.hilling.maven.release.versioning;
 
 import java.time.ZonedDateTime;
+import java.util.Optional;
 
 import org.immutables.gson.Gson;
 import org.immutables.value.Value;
@@ -17,6 +18,12 @@ public abstract class ModuleVersion {
 
     public abstract ImmutableFixVersion getVersion();
 
+    /**
+     * @return content fingerprint of the module: git tree id of the module directory without nested modules. Empty
+     * for release infos written by older versions of the plugin.
+     */
+    public abstract Optional<String> getFingerprint();
+
     @Override
     public String toString() {
         return getArtifact() + "-"  + getVersion().toString() + "-" + getReleaseTag();
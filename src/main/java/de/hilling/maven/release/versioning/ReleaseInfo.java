@@ -1,6 +1,8 @@
 package de.hilling.maven.release.versioning;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.immutables.gson.Gson;
@@ -19,7 +21,17 @@ public abstract class ReleaseInfo {
     public abstract List<ImmutableModuleVersion> getModules();
 
     public Optional<ImmutableModuleVersion> versionForArtifact(QualifiedArtifact artifact) {
-        return getModules().stream().filter(mv -> mv.getArtifact().equals(artifact)).findFirst();
+        return Optional.ofNullable(modulesByArtifact().get(ImmutableQualifiedArtifact.copyOf(artifact)));
+    }
+
+    /**
+     * @return the modules by their artifacts, the first one if an artifact is listed more than once.
+     */
+    @Value.Lazy
+    Map<ImmutableQualifiedArtifact, ImmutableModuleVersion> modulesByArtifact() {
+        final Map<ImmutableQualifiedArtifact, ImmutableModuleVersion> modules = new HashMap<>();
+        getModules().forEach(module -> modules.putIfAbsent(module.getArtifact(), module));
+        return modules;
     }
 
     @Override
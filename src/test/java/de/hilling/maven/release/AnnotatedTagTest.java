@@ -4,18 +4,29 @@ import e2e.ProjectType;
 import scaffolding.GitMatchers;
 import scaffolding.TestProject;
 
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+import de.hilling.maven.release.versioning.ImmutableQualifiedArtifact;
+import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
 import de.hilling.maven.release.versioning.ModuleVersion;
+import de.hilling.maven.release.versioning.ReleaseDateSingleton;
+import de.hilling.maven.release.versioning.ReleaseInfo;
 import com.google.gson.JsonSyntaxException;
 
 public class AnnotatedTagTest {
@@ -51,6 +62,47 @@ public class AnnotatedTagTest {
         GitMatchers.fromRef(project.local.getRepository(), ref);
     }
 
+    @Test
+    public void tagsOfCommittedReleaseInfosOnlyContainTheReleasedModules() throws GitAPIException, IOException {
+        final ImmutableReleaseInfo released = ImmutableReleaseInfo
+                                                  .copyOf(TestUtils.releaseInfo(MAJOR_VERSION, MINOR_VERSION,
+                                                                                "test-tag", "my-name"));
+        final ImmutableModuleVersion unreleased = released.getModules().get(0).withReleaseTag("older-tag")
+                                                          .withArtifact(ImmutableQualifiedArtifact.copyOf(
+                                                              TestUtils.artifactIdForModule("other-module")));
+        final ImmutableReleaseInfo releaseInfo = released.withModules(released.getModules().get(0), unreleased);
+        new ReleaseInfoStorage(project.localDir, project.local).store(releaseInfo);
+        new AnnotatedTag("test-tag", releaseInfo).saveAtHEAD(project.local);
+
+        Ref ref = project.local.tagList().call().get(0);
+        final String message;
+        try (RevWalk walk = new RevWalk(project.local.getRepository())) {
+            message = walk.parseTag(ref.getObjectId()).getFullMessage();
+        }
+        assertThat(message, containsString("releasedModules"));
+        assertThat(message, not(containsString("other-module")));
+        AnnotatedTag inflatedTag = GitMatchers.fromRef(project.local.getRepository(), ref);
+        assertThat(inflatedTag.getReleasedModules(), equalTo(singletonList(released.getModules().get(0))));
+        assertThat(inflatedTag.getReleaseInfo(), equalTo(releaseInfo));
+    }
+
+    @Test
+    public void theLatestReleaseTagOnTheHistoryOfHeadIsFound() throws GitAPIException, IOException {
+        assertThat(AnnotatedTag.latestReachable(project.local.getRepository()), equalTo(Optional.empty()));
+        final String older = ReleaseDateSingleton.TAG_PREFIX + "2020-01-01-120000";
+        final String newer = ReleaseDateSingleton.TAG_PREFIX + "2020-02-01-120000";
+        new AnnotatedTag(older, TestUtils.releaseInfo(1, 0, older, "my-name")).saveAtHEAD(project.local);
+        project.commitRandomFile(".");
+        final ReleaseInfo newerInfo = TestUtils.releaseInfo(2, 0, newer, "my-name");
+        new AnnotatedTag(newer, newerInfo).saveAtHEAD(project.local);
+        project.commitRandomFile(".");
+        project.local.tag().setName(ReleaseDateSingleton.TAG_PREFIX + "lightweight").setAnnotated(false).call();
+
+        final AnnotatedTag latest = AnnotatedTag.latestReachable(project.local.getRepository()).get();
+        assertThat(latest.name(), equalTo(newer));
+        assertThat(latest.getReleaseInfo(), equalTo(newerInfo));
+    }
+
     private void assertModuleVersion(AnnotatedTag testedTag) {
         final ModuleVersion moduleVersion = testedTag.getReleaseInfo()
                                                      .versionForArtifact(TestUtils.artifactIdForModule("my-name"))
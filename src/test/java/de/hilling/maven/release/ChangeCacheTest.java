@@ -0,0 +1,53 @@
+package de.hilling.maven.release;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChangeCacheTest {
+
+    private static final ObjectId TAG_1 = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId TAG_2 = ObjectId.fromString("2222222222222222222222222222222222222222");
+    private static final ObjectId HEAD  = ObjectId.fromString("3333333333333333333333333333333333333333");
+
+    @Rule
+    public TemporaryFolder gitDir = new TemporaryFolder();
+
+    @Test
+    public void storesUsedEntriesOnly() {
+        final Map<String, Boolean> changes = new HashMap<>();
+        changes.put("core-utils", true);
+        changes.put("console-app", false);
+        final ChangeCache first = ChangeCache.load(gitDir.getRoot(), new SystemStreamLog());
+        first.put(TAG_1, HEAD, changes);
+        first.put(TAG_2, HEAD, changes);
+        first.store();
+
+        final ChangeCache second = ChangeCache.load(gitDir.getRoot(), new SystemStreamLog());
+        assertThat(second.get(TAG_1).get().getHead(), is(HEAD.name()));
+        assertThat(second.get(TAG_1).get().getChanges(), is(changes));
+        second.put(TAG_1, HEAD, changes);
+        second.store();
+
+        final ChangeCache third = ChangeCache.load(gitDir.getRoot(), new SystemStreamLog());
+        assertThat(third.get(TAG_1).isPresent(), is(true));
+        assertThat(third.get(TAG_2).isPresent(), is(false));
+    }
+
+    @Test
+    public void ignoresUnreadableCache() throws Exception {
+        FileUtils.write(new File(gitDir.getRoot(), ChangeCache.CACHE_FILE), "{ broken", StandardCharsets.UTF_8);
+        assertThat(ChangeCache.load(gitDir.getRoot(), new SystemStreamLog()).get(TAG_1).isPresent(), is(false));
+    }
+}
@@ -7,24 +7,39 @@ import static de.hilling.maven.release.TestUtils.saveFileInModule;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
 import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.CommitIndex;
+import de.hilling.maven.release.repository.GitContext;
 
 public class DiffDetectorTest {
 
+    private static final List<String> INDEPENDENT_MODULES = asList(".", "core-utils", "console-app");
+    private static final List<String> NESTED_MODULES      = asList(".", "core-utils", "console-app", "parent-module",
+                                                                   "server-modules", "server-modules/server-module-a",
+                                                                   "server-modules/server-module-b",
+                                                                   "server-modules/a-misnamed-one");
+
     @Rule
     public TestProject singleProject = new TestProject(ProjectType.SINGLE);
     @Rule
@@ -32,8 +47,9 @@ public class DiffDetectorTest {
     @Rule
     public TestProject nestedProject = new TestProject(ProjectType.NESTED);
 
-    private Log                                         log;
-    private Map<AnnotatedTag, org.eclipse.jgit.lib.Ref> refMap;
+    private final List<GitContext>                            contexts = new ArrayList<>();
+    private       Log                                         log;
+    private       Map<AnnotatedTag, org.eclipse.jgit.lib.Ref> refMap;
 
     @Before
     public void setUp() {
@@ -44,6 +60,11 @@ public class DiffDetectorTest {
         log = new SystemStreamLog();
     }
 
+    @After
+    public void closeContexts() {
+        contexts.forEach(GitContext::close);
+    }
+
     @Test
     public void canDetectIfFilesHaveBeenChangedForAModuleSinceSomeSpecificTag() throws Exception {
 
@@ -51,11 +72,11 @@ public class DiffDetectorTest {
         AnnotatedTag tag2 = saveFileInModule(independentVersions, "core-utils", "2.0", refMap);
         AnnotatedTag tag3 = saveFileInModule(independentVersions, "console-app", "1.2.4", refMap);
 
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(independentVersions.local.getRepository(), log);
+        TreeWalkingDiffDetector detector = detector(independentVersions, false);
 
-        assertThat(detector.hasChangedSince("core-utils", Collections.emptyList(), refMap.get(tag2)), is(false));
-        assertThat(detector.hasChangedSince("console-app", Collections.emptyList(), refMap.get(tag2)), is(true));
-        assertThat(detector.hasChangedSince("console-app", Collections.emptyList(), refMap.get(tag3)), is(false));
+        assertThat(detector.changedModulesSince(INDEPENDENT_MODULES, refMap.get(tag2)).get("core-utils"), is(false));
+        assertThat(detector.changedModulesSince(INDEPENDENT_MODULES, refMap.get(tag2)).get("console-app"), is(true));
+        assertThat(detector.changedModulesSince(INDEPENDENT_MODULES, refMap.get(tag3)).get("console-app"), is(false));
     }
 
     @Test
@@ -64,21 +85,21 @@ public class DiffDetectorTest {
         singleProject.commitRandomFile(".");
         AnnotatedTag tag2 = saveFileInModule(singleProject, ".", "1.0.2", refMap);
 
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(singleProject.local.getRepository(), log);
+        TreeWalkingDiffDetector detector = detector(singleProject, false);
 
-        assertThat(detector.hasChangedSince(".", Collections.emptyList(), refMap.get(tag1)), is(true));
-        assertThat(detector.hasChangedSince(".", Collections.emptyList(), refMap.get(tag2)), is(false));
+        assertThat(detector.changedModulesSince(singletonList("."), refMap.get(tag1)).get("."), is(true));
+        assertThat(detector.changedModulesSince(singletonList("."), refMap.get(tag2)).get("."), is(false));
     }
 
     @Test
     public void ignoreReleaseInfoInTheRoot() throws IOException, GitAPIException {
         AnnotatedTag tag1 = saveFileInModule(singleProject, ".", "1.0.1", refMap);
         singleProject.commitFile(".", ReleaseInfoStorage.RELEASE_INFO_FILE, "any-content");
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(singleProject.local.getRepository(), log);
-        assertThat(detector.hasChangedSince(".", Collections.emptyList(), refMap.get(tag1)), is(false));
+        TreeWalkingDiffDetector detector = detector(singleProject, false);
+        assertThat(detector.changedModulesSince(singletonList("."), refMap.get(tag1)).get("."), is(false));
 
         AnnotatedTag tag2 = saveFileInModule(singleProject, ".", "1.0.2", refMap);
-        assertThat(detector.hasChangedSince(".", Collections.emptyList(), refMap.get(tag2)), is(false));
+        assertThat(detector.changedModulesSince(singletonList("."), refMap.get(tag2)).get("."), is(false));
     }
 
     @Test
@@ -88,8 +109,8 @@ public class DiffDetectorTest {
         AnnotatedTag tag3 = saveFileInModule(independentVersions, "console-app", "1.2.4", refMap);
         independentVersions.commitRandomFile("console-app");
 
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(independentVersions.local.getRepository(), log);
-        assertThat(detector.hasChangedSince("console-app", Collections.emptyList(), refMap.get(tag3)), is(true));
+        TreeWalkingDiffDetector detector = detector(independentVersions, false);
+        assertThat(detector.changedModulesSince(INDEPENDENT_MODULES, refMap.get(tag3)).get("console-app"), is(true));
     }
 
     @Test
@@ -97,9 +118,8 @@ public class DiffDetectorTest {
         AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
         nestedProject.commitRandomFile("server-modules/server-module-a");
 
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(nestedProject.local.getRepository(), log);
-        assertThat(detector.hasChangedSince("server-modules", asList("server-module-a", "server-module-b"),
-                                            refMap.get(tag1)), is(false));
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        assertThat(detector.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("server-modules"), is(false));
     }
 
     @Test
@@ -107,9 +127,150 @@ public class DiffDetectorTest {
         AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
         nestedProject.commitRandomFile("server-modules");
 
-        TreeWalkingDiffDetector detector = new TreeWalkingDiffDetector(nestedProject.local.getRepository(), log);
-        assertThat(detector.hasChangedSince("server-modules", asList("server-module-a", "server-module-b"),
-                                            refMap.get(tag1)), is(true));
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        assertThat(detector.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("server-modules"), is(true));
+    }
+
+    @Test
+    public void ignoreReleaseInfoOnlyInTheTopLevelDirectoryOfModules() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitFile("server-modules", ReleaseInfoStorage.RELEASE_INFO_FILE, "any-content");
+
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        assertThat(detector.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("server-modules"), is(false));
+        assertThat(detector.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("."), is(false));
+
+        nestedProject.commitFile("server-modules/server-module-a/src", ReleaseInfoStorage.RELEASE_INFO_FILE,
+                                 "any-content");
+        assertThat(detector.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("server-modules/server-module-a"),
+                   is(true));
+    }
+
+    @Test
+    public void canDetectChangesOfAllModulesInOneWalk() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitRandomFile("server-modules/server-module-a");
+        nestedProject.commitFile("core-utils", ReleaseInfoStorage.RELEASE_INFO_FILE, "any-content");
+
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        Map<String, Boolean> changes = detector.changedModulesSince(
+            asList(".", "core-utils", "server-modules", "server-modules/server-module-a"), refMap.get(tag1));
+        assertThat(changes.get("server-modules/server-module-a"), is(true));
+        assertThat(changes.get("server-modules"), is(false));
+        assertThat(changes.get("core-utils"), is(false));
+        assertThat(changes.get("."), is(false));
+    }
+
+    @Test
+    public void continuesDetectionFromPreviouslyCheckedHead() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitRandomFile("core-utils");
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        final List<String> modules = asList(".", "core-utils", "server-modules",
+                                             "server-modules/server-module-a");
+        final ObjectId checkedHead = detector.headId();
+        assertThat(detector.changedModulesSince(modules, refMap.get(tag1)).get("core-utils"), is(true));
+
+        nestedProject.commitRandomFile("server-modules/server-module-a");
+        assertThat(detector.isReachableFromHead(checkedHead), is(true));
+        Map<String, Boolean> changes = detector.changedModulesSince(modules, refMap.get(tag1), checkedHead,
+                                                                    singletonList("core-utils"));
+        assertThat(changes.get("core-utils"), is(true));
+        assertThat(changes.get("server-modules/server-module-a"), is(true));
+        assertThat(changes.get("server-modules"), is(false));
+
+        changes = detector.changedModulesSince(modules, refMap.get(tag1), detector.headId(),
+                                               Collections.emptyList());
+        assertThat(changes.get("core-utils"), is(false));
+        assertThat(changes.get("server-modules/server-module-a"), is(false));
+    }
+
+    @Test
+    public void commitIndexGivesTheSameResults() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitRandomFile(".");
+        final ObjectId checkedHead = TestProject.head(nestedProject.local);
+        nestedProject.commitRandomFile("server-modules/server-module-a");
+        nestedProject.commitRandomFile("core-utils");
+        final CommitIndex index = CommitIndex.empty();
+        try (ObjectReader reader = nestedProject.local.getRepository().newObjectReader()) {
+            index.refresh(reader, TestProject.head(nestedProject.local));
+        }
+        index.store(nestedProject.local.getRepository().getDirectory());
+
+        TreeWalkingDiffDetector detector = detector(nestedProject, false);
+        Map<String, Boolean> changes = detector.changedModulesSince(
+            asList(".", "core-utils", "server-modules", "server-modules/server-module-a"), refMap.get(tag1));
+        assertThat(changes.get("."), is(true));
+        assertThat(changes.get("core-utils"), is(true));
+        assertThat(changes.get("server-modules"), is(false));
+        assertThat(changes.get("server-modules/server-module-a"), is(true));
+        assertThat(detector.isReachableFromHead(checkedHead), is(true));
+        assertThat(detector.isReachableFromHead(detector.headId()), is(true));
+    }
+
+    @Test
+    public void commitIndexSkipsCommitsThatCannotChangeTheRemainingModules() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitFile(".", "some-file.txt", "root");
+        nestedProject.commitFile("core-utils", "some-file.txt", "first");
+        nestedProject.commitFile("core-utils", "some-file.txt", "second");
+        nestedProject.commitFile("core-utils", "some-file.txt", "third");
+        final Map<String, Boolean> withoutIndex = detector(nestedProject, false).changedModulesSince(NESTED_MODULES,
+                                                                                                    refMap.get(tag1));
+        final CommitIndex index = CommitIndex.empty();
+        try (ObjectReader reader = nestedProject.local.getRepository().newObjectReader()) {
+            index.refresh(reader, TestProject.head(nestedProject.local));
+        }
+        index.store(nestedProject.local.getRepository().getDirectory());
+
+        final List<String> debugMessages = new ArrayList<>();
+        log = new SystemStreamLog() {
+            @Override
+            public void debug(CharSequence content) {
+                debugMessages.add(content.toString());
+            }
+        };
+        final Map<String, Boolean> withIndex = detector(nestedProject, false).changedModulesSince(NESTED_MODULES,
+                                                                                                 refMap.get(tag1));
+        assertThat(withIndex, equalTo(withoutIndex));
+        assertThat(withIndex.get("."), is(true));
+        assertThat(withIndex.get("core-utils"), is(true));
+        // the two older changes of core-utils cannot change any of the remaining modules, including the root module
+        assertThat(debugMessages, hasItem("commits skipped by the commit index: 2"));
+    }
+
+    @Test
+    public void comparingTreesIgnoresRevertedChanges() throws IOException, GitAPIException {
+        nestedProject.commitFile("core-utils", "some-file.txt", "original");
+        AnnotatedTag tag1 = saveFileInModule(nestedProject, "server-modules", "1.2.4", refMap);
+        nestedProject.commitFile("core-utils", "some-file.txt", "changed");
+        nestedProject.commitFile("core-utils", "some-file.txt", "original");
+        nestedProject.commitRandomFile("server-modules/server-module-a");
+
+        TreeWalkingDiffDetector walking = detector(nestedProject, false);
+        TreeWalkingDiffDetector comparing = detector(nestedProject, true);
+        assertThat(walking.changedModulesSince(NESTED_MODULES, refMap.get(tag1)).get("core-utils"), is(true));
+
+        Map<String, Boolean> changes = comparing.changedModulesSince(NESTED_MODULES, refMap.get(tag1));
+        assertThat(changes.get("server-modules/server-module-a"), is(true));
+        assertThat(changes.get("server-modules"), is(false));
+        assertThat(changes.get("core-utils"), is(false));
+    }
+
+    @Test
+    public void comparingTreesStopsEarlyIfOnlyReleaseInfoChanged() throws IOException, GitAPIException {
+        AnnotatedTag tag1 = saveFileInModule(singleProject, ".", "1.0.1", refMap);
+        singleProject.commitFile(".", ReleaseInfoStorage.RELEASE_INFO_FILE, "any-content");
+
+        TreeWalkingDiffDetector detector = detector(singleProject, true);
+        assertThat(detector.changedModulesSince(singletonList("."), refMap.get(tag1)).get("."), is(false));
     }
 
+
+    private TreeWalkingDiffDetector detector(TestProject project, boolean compareTrees) {
+        final GitContext context = new GitContext(project.local.getRepository());
+        contexts.add(context);
+        return new TreeWalkingDiffDetector(context, log, compareTrees);
+    }
 }
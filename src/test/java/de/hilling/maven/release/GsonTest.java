@@ -29,7 +29,7 @@ public class GsonTest {
                                 "    }\n" +
                                 "  ]\n" +
                                 "}";
-        ImmutableReleaseInfo info = new GsonFactory().createGson().fromJson(json, ImmutableReleaseInfo.class);
+        ImmutableReleaseInfo info = GsonFactory.gson().fromJson(json, ImmutableReleaseInfo.class);
         Assert.assertNotNull(info);
     }
 }
@@ -0,0 +1,88 @@
+package de.hilling.maven.release;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.repository.GitContext;
+
+public class ModuleFingerprintsTest {
+
+    private static final List<String> MODULES = asList(".", "core-utils", "server-modules",
+                                                       "server-modules/server-module-a");
+
+    @Rule
+    public TestProject nestedProject = new TestProject(ProjectType.NESTED);
+
+    private GitContext         context;
+    private ModuleFingerprints fingerprints;
+
+    @Before
+    public void setUp() {
+        nestedProject.checkClean = false;
+        context = new GitContext(nestedProject.local.getRepository());
+        fingerprints = new ModuleFingerprints(context);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void fingerprintOfLeafModuleIsItsTreeId() throws Exception {
+        final Repository repository = nestedProject.local.getRepository();
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, "core-utils",
+                                                  repository.parseCommit(repository.resolve("HEAD")).getTree())) {
+            assertThat(fingerprints.atHead(MODULES).get("core-utils"), equalTo(treeWalk.getObjectId(0).name()));
+        }
+    }
+
+    @Test
+    public void nestedModulesDoNotChangeFingerprint() throws Exception {
+        final Map<String, String> before = fingerprints.atHead(MODULES);
+        nestedProject.commitRandomFile("server-modules/server-module-a");
+        nestedProject.commitFile(".", ReleaseInfoStorage.RELEASE_INFO_FILE, "any-content");
+        new File(nestedProject.localDir, ReleaseInfoStorage.RELEASE_INFO_DIRECTORY).mkdir();
+        nestedProject.commitFile(ReleaseInfoStorage.RELEASE_INFO_DIRECTORY, "release.json", "any-content");
+        final Map<String, String> after = fingerprints.atHead(MODULES);
+
+        assertThat(after.get("."), equalTo(before.get(".")));
+        assertThat(after.get("server-modules"), equalTo(before.get("server-modules")));
+        assertThat(after.get("core-utils"), equalTo(before.get("core-utils")));
+        assertThat(after.get("server-modules/server-module-a"),
+                   not(equalTo(before.get("server-modules/server-module-a"))));
+    }
+
+    @Test
+    public void changesInModuleChangeFingerprint() throws Exception {
+        final Map<String, String> before = fingerprints.atHead(MODULES);
+        nestedProject.commitRandomFile("server-modules");
+        final Map<String, String> after = fingerprints.atHead(MODULES);
+
+        assertThat(after.get("server-modules"), not(equalTo(before.get("server-modules"))));
+        assertThat(after.get("."), equalTo(before.get(".")));
+    }
+
+    @Test
+    public void missingModulesHaveNoFingerprint() throws Exception {
+        assertThat(fingerprints.atHead(asList(".", "no-such-module")), not(hasKey("no-such-module")));
+    }
+}
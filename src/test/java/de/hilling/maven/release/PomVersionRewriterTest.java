@@ -0,0 +1,80 @@
+package de.hilling.maven.release;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PomVersionRewriterTest {
+
+    private static final String POM = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                                      + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                                      + "  <!-- keep this comment -->\n"
+                                      + "  <parent>\n"
+                                      + "    <groupId>group</groupId>\n"
+                                      + "    <artifactId>parent</artifactId>\n"
+                                      + "    <version>1-SNAPSHOT</version>\n"
+                                      + "  </parent>\n"
+                                      + "  <artifactId>module</artifactId>\n"
+                                      + "  <version>\t2-SNAPSHOT </version>\n"
+                                      + "  <dependencies>\n"
+                                      + "    <dependency>\n"
+                                      + "      <version>${core.version}</version>\n"
+                                      + "      <groupId>group</groupId>\n"
+                                      + "      <artifactId>core</artifactId>\n"
+                                      + "      <exclusions><exclusion><groupId>other</groupId></exclusion></exclusions>\n"
+                                      + "    </dependency>\n"
+                                      + "    <dependency>\n"
+                                      + "      <groupId>group</groupId>\n"
+                                      + "      <artifactId>external</artifactId>\n"
+                                      + "      <version>3-SNAPSHOT</version>\n"
+                                      + "    </dependency>\n"
+                                      + "  </dependencies>\n"
+                                      + "</project>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void onlyTheVersionsAreReplaced() throws Exception {
+        final PomVersionRewriter rewriter = new PomVersionRewriter("2.0");
+        rewriter.parentVersion("1.4");
+        rewriter.dependencyVersion("group", "core", "5.1");
+
+        final String expected = POM.replace("<version>1-SNAPSHOT</version>", "<version>1.4</version>")
+                                   .replace("<version>\t2-SNAPSHOT </version>", "<version>\t2.0 </version>")
+                                   .replace("<version>${core.version}</version>", "<version>5.1</version>");
+        assertThat(rewriter.rewrite(POM), equalTo(expected));
+    }
+
+    @Test
+    public void parentVersionIsKeptUnlessGiven() throws Exception {
+        final String expected = POM.replace("<version>\t2-SNAPSHOT </version>", "<version>\t2.0 </version>");
+        assertThat(new PomVersionRewriter("2.0").rewrite(POM), equalTo(expected));
+    }
+
+    @Test
+    public void inheritedVersionIsAddedAfterTheArtifactId() throws Exception {
+        final String pom = POM.replace("  <version>\t2-SNAPSHOT </version>\n", "").replace("\n", "\r\n");
+        final String expected = pom.replace("<artifactId>module</artifactId>",
+                                            "<artifactId>module</artifactId>\r\n  <version>2.0</version>");
+        assertThat(new PomVersionRewriter("2.0").rewrite(pom), equalTo(expected));
+    }
+
+    @Test
+    public void encodingOfTheFileIsKept() throws Exception {
+        final String pom = POM.replace("UTF-8", "ISO-8859-1").replace("keep this comment", "grüße");
+        final File file = folder.newFile("pom.xml");
+        Files.write(file.toPath(), pom.getBytes(StandardCharsets.ISO_8859_1));
+
+        new PomVersionRewriter("2.0").rewrite(file);
+        final String expected = pom.replace("<version>\t2-SNAPSHOT </version>", "<version>\t2.0 </version>");
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1), equalTo(expected));
+    }
+}
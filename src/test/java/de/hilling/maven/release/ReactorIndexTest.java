@@ -0,0 +1,96 @@
+package de.hilling.maven.release;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hilling.maven.release.versioning.ReleaseInfo;
+
+public class ReactorIndexTest {
+
+    private static final String GROUP_ID = TestUtils.TEST_GROUP_ID;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MavenProject root;
+    private MavenProject core;
+    private MavenProject app;
+    private ReactorIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        root = project("root", folder.getRoot());
+        core = project("core", new File(folder.getRoot(), "core"));
+        app = project("app", new File(folder.getRoot(), "apps/app"));
+        core.setParent(root);
+        app.setParent(root);
+        app.getModel().addDependency(dependency(GROUP_ID, "core"));
+        app.getModel().addDependency(dependency("other.group", "library"));
+        app.getModel().addDependency(dependency(GROUP_ID, "core"));
+
+        final ReleaseInfo previousRelease = TestUtils.releaseInfo(2, 4, "testtag", "core");
+        index = ReactorIndex.of(root, asList(root, core, app), previousRelease);
+    }
+
+    @Test
+    public void modulesAreFoundByTheirCoordinates() {
+        assertThat(index.find(GROUP_ID, "app"), equalTo(Optional.of(app)));
+        assertThat(index.find(GROUP_ID, "library").isPresent(), is(false));
+    }
+
+    @Test
+    public void pathsAreRelativeToTheRootProject() {
+        assertThat(index.paths(), contains(".", "core", "apps/app"));
+        assertThat(index.path(app), equalTo("apps/app"));
+    }
+
+    @Test
+    public void onlyModulesOfTheReactorAreDependencies() {
+        assertThat(index.dependencies(app), contains(core));
+        assertThat(index.dependencies(core), is(empty()));
+        assertThat(index.parent(app), equalTo(Optional.of(root)));
+        assertThat(index.parent(root).isPresent(), is(false));
+    }
+
+    @Test
+    public void dependentsIncludeChildModules() {
+        assertThat(index.dependents(root), contains(core, app));
+        assertThat(index.dependents(core), contains(app));
+        assertThat(index.dependents(app), is(empty()));
+    }
+
+    @Test
+    public void previousVersionsAreLookedUpByArtifact() {
+        assertThat(index.previousVersion(core).get().getReleaseTag(), equalTo("test-tag"));
+        assertThat(index.previousVersion(app).isPresent(), is(false));
+    }
+
+    private static MavenProject project(String artifactId, File basedir) {
+        final MavenProject project = new MavenProject();
+        project.setGroupId(GROUP_ID);
+        project.setArtifactId(artifactId);
+        project.setFile(new File(basedir, "pom.xml"));
+        return project;
+    }
+
+    private static Dependency dependency(String groupId, String artifactId) {
+        final Dependency dependency = new Dependency();
+        dependency.setGroupId(groupId);
+        dependency.setArtifactId(artifactId);
+        return dependency;
+    }
+}
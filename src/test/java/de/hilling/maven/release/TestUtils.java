@@ -20,12 +20,15 @@ import de.hilling.maven.release.versioning.VersionMatcher;
 
 public final class TestUtils {
 
-    public static final String  PREPARE_GOAL  = "smart-release:prepare";
-    public static final String  NEXT_GOAL     = "smart-release:next";
-    public static final String  HELP_GOAL     = "smart-release:help";
-    public static final String  CLEANUP_GOAL  = "smart-release:cleanup";
-    public static final  String TEST_GROUP_ID = "de.hilling.maven.release.testprojects";
-    private static final String TEST_TAG_NAME = "test-tag";
+    public static final  String PREPARE_GOAL      = "smart-release:prepare";
+    public static final  String NEXT_GOAL         = "smart-release:next";
+    public static final  String HELP_GOAL         = "smart-release:help";
+    public static final  String CLEANUP_GOAL      = "smart-release:cleanup";
+    public static final  String COMMIT_INDEX_GOAL = "smart-release:commit-index";
+    public static final  String TAGS_GOAL         = "smart-release:tags";
+    public static final  String HISTORY_GOAL      = "smart-release:history";
+    public static final  String TEST_GROUP_ID     = "de.hilling.maven.release.testprojects";
+    private static final String TEST_TAG_NAME     = "test-tag";
     private TestUtils() {
     }
 
@@ -0,0 +1,97 @@
+package de.hilling.maven.release.releaseinfo;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import de.hilling.maven.release.TestUtils;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+
+public class ReleaseHistoryTest {
+
+    private static final ZonedDateTime RELEASE_DATE = ZonedDateTime.of(2020, 1, 1, 12, 0, 0, 0,
+                                                                       ZoneId.of("Europe/Berlin"));
+    private static final String        MODULE_A     = TestUtils.TEST_GROUP_ID + ":module-a";
+    private static final String        MODULE_B     = TestUtils.TEST_GROUP_ID + ":module-b";
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.SINGLE);
+
+    private ReleaseHistory history;
+    private File           historyFile;
+
+    @Before
+    public void setUp() {
+        history = new ReleaseHistory(project.localDir, project.local);
+        historyFile = new File(project.localDir, ReleaseHistory.HISTORY_FILE);
+    }
+
+    @Test
+    public void releasesAreQueriedByArtifact() throws Exception {
+        final ImmutableModuleVersion a1 = module("module-a", "tag-1", 1);
+        final ImmutableModuleVersion b1 = module("module-b", "tag-1", 1);
+        final ImmutableModuleVersion a2 = module("module-a", "tag-2", 2);
+        history.append(asList(a1, b1));
+        history.append(singletonList(a2));
+
+        assertThat(history.releases(MODULE_A), contains(a1, a2));
+        assertThat(history.releases(MODULE_B), contains(b1));
+        assertThat(history.releases(TestUtils.TEST_GROUP_ID + ":module-c"), is(empty()));
+        assertThat(history.artifacts(), hasEntry(MODULE_A, 2));
+    }
+
+    @Test
+    public void indexIsExtendedWithAppendedReleases() throws Exception {
+        final ImmutableModuleVersion a1 = module("module-a", "tag-1", 1);
+        history.append(singletonList(a1));
+        assertThat(history.releases(MODULE_A), contains(a1));
+        final File indexFile = new File(project.local.getRepository().getDirectory(), ReleaseHistory.INDEX_FILE);
+        assertThat(indexFile.exists(), is(true));
+
+        final ImmutableModuleVersion a2 = module("module-a", "tag-2", 2);
+        new ReleaseHistory(project.localDir, project.local).append(singletonList(a2));
+        assertThat(history.releases(MODULE_A), contains(a1, a2));
+    }
+
+    @Test
+    public void rewrittenHistoryIsIndexedAgain() throws Exception {
+        final ImmutableModuleVersion a1 = module("module-a", "tag-1", 1);
+        final ImmutableModuleVersion b1 = module("module-b", "tag-1", 1);
+        history.append(asList(a1, b1));
+        assertThat(history.releases(MODULE_B), contains(b1));
+
+        final String firstLine = FileUtils.readLines(historyFile, StandardCharsets.UTF_8).get(0);
+        FileUtils.writeStringToFile(historyFile, firstLine, StandardCharsets.UTF_8);
+        assertThat(history.releases(MODULE_B), is(empty()));
+
+        final ImmutableModuleVersion b2 = module("module-b", "tag-2", 2);
+        history.append(singletonList(b2));
+        assertThat(history.releases(MODULE_A), contains(a1));
+        assertThat(history.releases(MODULE_B), contains(b2));
+        assertThat(FileUtils.readLines(historyFile, StandardCharsets.UTF_8).size(), equalTo(2));
+    }
+
+    private static ImmutableModuleVersion module(String artifactId, String releaseTag, int majorVersion) {
+        final ImmutableModuleVersion template = TestUtils.releaseInfo(majorVersion, 0, releaseTag, artifactId)
+                                                         .getModules().get(0);
+        return ImmutableModuleVersion.copyOf(template).withReleaseTag(releaseTag).withReleaseDate(RELEASE_DATE);
+    }
+}
@@ -0,0 +1,158 @@
+package de.hilling.maven.release.releaseinfo;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Rule;
+import org.junit.Test;
+
+import de.hilling.maven.release.AnnotatedTag;
+import de.hilling.maven.release.TestUtils;
+import de.hilling.maven.release.versioning.ImmutableModuleVersion;
+import de.hilling.maven.release.versioning.ImmutableReleaseInfo;
+
+public class ReleaseInfoStorageTest {
+
+    private static final ZonedDateTime RELEASE_DATE = ZonedDateTime.of(2020, 1, 1, 12, 0, 0, 0,
+                                                                       ZoneId.of("Europe/Berlin"));
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.SINGLE);
+
+    @Test
+    public void shardedReleaseInfoOnlyRewritesReleasedModules() throws Exception {
+        final ReleaseInfoStorage storage = new ReleaseInfoStorage(project.localDir, project.local, false,
+                                                                  ReleaseInfoLayout.Sharded);
+        final ImmutableReleaseInfo first = releaseInfo("tag-1", module("module-a", "tag-1", 1),
+                                                       module("module-b", "tag-1", 1));
+        storage.store(first);
+        assertThat(storage.load(), equalTo(first));
+
+        final ImmutableReleaseInfo second = releaseInfo("tag-2", module("module-a", "tag-1", 1),
+                                                        module("module-b", "tag-2", 2));
+        storage.store(second);
+        assertThat(storage.load(), equalTo(second));
+        assertThat(changedInHead(), containsInAnyOrder(".release-info/release.json",
+                                                       ".release-info/" + TestUtils.TEST_GROUP_ID + "/module-b.json"));
+    }
+
+    @Test
+    public void layoutIsConvertedOnStore() throws Exception {
+        final ImmutableReleaseInfo releaseInfo = releaseInfo("tag-1", module("module-a", "tag-1", 1));
+        new ReleaseInfoStorage(project.localDir, project.local).store(releaseInfo);
+        new ReleaseInfoStorage(project.localDir, project.local, true, ReleaseInfoLayout.Sharded).store(releaseInfo);
+        assertThat(new File(project.localDir, ReleaseInfoStorage.RELEASE_INFO_FILE).exists(), is(false));
+        assertThat(new ReleaseInfoStorage(project.localDir, project.local).load(), equalTo(releaseInfo));
+
+        new ReleaseInfoStorage(project.localDir, project.local).store(releaseInfo);
+        assertThat(new File(project.localDir, ReleaseInfoStorage.RELEASE_INFO_DIRECTORY).exists(), is(false));
+        assertThat(project.local.status().call().isClean(), is(true));
+    }
+
+    @Test
+    public void releaseInfoIsCommittedWithAdditionalFiles() throws Exception {
+        final Repository repository = project.local.getRepository();
+        final String head = repository.resolve("HEAD").name();
+        final ImmutableModuleVersion module = module("module-a", "tag-1", 1);
+        new ReleaseHistory(project.localDir, project.local).append(singletonList(module));
+        new ReleaseInfoStorage(project.localDir, project.local).store(releaseInfo("tag-1", module),
+                                                                      ReleaseHistory.HISTORY_FILE, "missing.txt");
+
+        assertThat(changedInHead(), containsInAnyOrder(ReleaseInfoStorage.RELEASE_INFO_FILE,
+                                                       ReleaseHistory.HISTORY_FILE));
+        assertThat(repository.parseCommit(repository.resolve("HEAD^")).name(), equalTo(head));
+        assertThat(project.local.status().call().isClean(), is(true));
+    }
+
+    @Test
+    public void commitHooksRunWhenTheReleaseInfoIsCommitted() throws Exception {
+        // JGit only looks for the hooks of repositories opened with an absolute path
+        final File workTree = project.localDir.getAbsoluteFile();
+        try (Git git = Git.open(workTree)) {
+            final Repository repository = git.getRepository();
+            final File hook = new File(repository.getDirectory(), "hooks/commit-msg");
+            FileUtils.write(hook, "#!/bin/sh\necho 'Checked-by: commit-msg' >> \"$1\"\n", StandardCharsets.UTF_8);
+            assertThat(hook.setExecutable(true), is(true));
+
+            new ReleaseInfoStorage(workTree, git).store(releaseInfo("tag-1", module("module-a", "tag-1", 1)));
+
+            final RevCommit head = repository.parseCommit(repository.resolve("HEAD"));
+            assertThat(head.getFullMessage(), containsString("Checked-by: commit-msg"));
+            assertThat(changedInHead(), containsInAnyOrder(ReleaseInfoStorage.RELEASE_INFO_FILE));
+            assertThat(git.status().call().isClean(), is(true));
+        }
+    }
+
+    @Test
+    public void notesLayoutAttachesReleaseInfoToHead() throws Exception {
+        final Repository repository = project.local.getRepository();
+        final ImmutableReleaseInfo first = releaseInfo("tag-1", module("module-a", "tag-1", 1));
+        new ReleaseInfoStorage(project.localDir, project.local).store(first);
+        final ReleaseInfoStorage notes = new ReleaseInfoStorage(project.localDir, project.local, false,
+                                                                ReleaseInfoLayout.Notes);
+        notes.store(first);
+        assertThat(new File(project.localDir, ReleaseInfoStorage.RELEASE_INFO_FILE).exists(), is(false));
+        assertThat(changedInHead(), containsInAnyOrder(ReleaseInfoStorage.RELEASE_INFO_FILE));
+        final ObjectId head = repository.resolve("HEAD");
+
+        final ImmutableReleaseInfo second = releaseInfo("tag-2", module("module-a", "tag-2", 2));
+        notes.store(second);
+        assertThat(repository.resolve("HEAD"), equalTo(head));
+        assertThat(project.local.status().call().isClean(), is(true));
+        assertThat(new ReleaseInfoStorage(project.localDir, project.local).load(), equalTo(second));
+        final Ref tag = new AnnotatedTag("tag-2", second).saveAtHEAD(project.local);
+        assertThat(AnnotatedTag.fromRef(repository, tag).getReleaseInfo(), equalTo(second));
+
+        project.commitRandomFile(".");
+        assertThat(new ReleaseInfoStorage(project.localDir, project.local).load(), equalTo(second));
+    }
+
+    private List<String> changedInHead() throws Exception {
+        final Repository repository = project.local.getRepository();
+        final List<String> paths = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            final RevCommit head = walk.parseCommit(repository.resolve("HEAD"));
+            treeWalk.addTree(walk.parseCommit(head.getParent(0)).getTree());
+            treeWalk.addTree(head.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+        }
+        return paths;
+    }
+
+    private static ImmutableReleaseInfo releaseInfo(String tagName, ImmutableModuleVersion... modules) {
+        return ImmutableReleaseInfo.builder().tagName(tagName).addModules(modules).build();
+    }
+
+    private static ImmutableModuleVersion module(String artifactId, String releaseTag, int majorVersion) {
+        final ImmutableModuleVersion template = TestUtils.releaseInfo(majorVersion, 0, releaseTag, artifactId)
+                                                         .getModules().get(0);
+        return ImmutableModuleVersion.copyOf(template).withReleaseTag(releaseTag).withReleaseDate(RELEASE_DATE);
+    }
+}
@@ -0,0 +1,119 @@
+package de.hilling.maven.release.repository;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CommitIndexTest {
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.INDEPENDENT_VERSIONS);
+
+    private File gitDir;
+
+    @Before
+    public void setUp() {
+        project.checkClean = false;
+        gitDir = project.local.getRepository().getDirectory();
+    }
+
+    @Test
+    public void indexesGenerationsAndChangedPaths() throws Exception {
+        project.commitRandomFile("console-app");
+        final ObjectId parent = TestProject.head(project.local);
+        project.commitRandomFile("core-utils");
+        final ObjectId head = TestProject.head(project.local);
+
+        final CommitIndex index = CommitIndex.empty();
+        try (ObjectReader reader = project.local.getRepository().newObjectReader()) {
+            assertThat(index.refresh(reader, head), greaterThan(1));
+            assertThat(index.refresh(reader, head), is(0));
+        }
+
+        assertThat(index.generation(head), is(index.generation(parent) + 1));
+        assertThat(index.mayHaveChanged(head, "core-utils"), is(true));
+        assertThat(index.mayHaveChanged(head, "console-app"), is(false));
+        assertThat(index.mayHaveChanged(parent, "console-app"), is(true));
+    }
+
+    @Test
+    public void refreshOnlyReadsTheCommitsMissingFromTheIndex() throws Exception {
+        project.commitRandomFile("core-utils");
+        final ObjectId indexed = TestProject.head(project.local);
+        final CommitIndex index = CommitIndex.empty();
+        try (ObjectReader reader = project.local.getRepository().newObjectReader()) {
+            index.refresh(reader, indexed);
+        }
+        project.commitRandomFile("console-app");
+        project.commitRandomFile("core-utils");
+        final ObjectId head = TestProject.head(project.local);
+
+        final Set<ObjectId> opened = new HashSet<>();
+        try (ObjectReader reader = project.local.getRepository().newObjectReader()) {
+            final ObjectReader recordingReader = new ObjectReader.Filter() {
+                @Override
+                protected ObjectReader delegate() {
+                    return reader;
+                }
+
+                @Override
+                public ObjectLoader open(AnyObjectId objectId, int typeHint) throws IOException {
+                    opened.add(objectId.copy());
+                    return super.open(objectId, typeHint);
+                }
+            };
+            assertThat(index.refresh(recordingReader, head), is(2));
+            assertThat(index.generation(head), is(index.generation(indexed) + 2));
+            try (RevWalk walk = new RevWalk(reader)) {
+                final RevCommit indexedCommit = walk.parseCommit(indexed);
+                assertThat(indexedCommit.getParentCount(), is(1));
+                assertThat(opened, not(hasItem(indexedCommit.getParent(0))));
+            }
+        }
+    }
+
+    @Test
+    public void canBeStoredAndLoaded() throws Exception {
+        project.commitRandomFile("console-app");
+        final ObjectId head = TestProject.head(project.local);
+        final CommitIndex index = CommitIndex.empty();
+        try (ObjectReader reader = project.local.getRepository().newObjectReader()) {
+            index.refresh(reader, head);
+        }
+        index.store(gitDir);
+
+        final CommitIndex loaded = CommitIndex.load(gitDir);
+        assertThat(loaded.size(), is(index.size()));
+        assertThat(loaded.generation(head), is(index.generation(head)));
+        assertThat(loaded.mayHaveChanged(head, "console-app"), is(true));
+        assertThat(loaded.mayHaveChanged(head, "core-utils"), is(false));
+    }
+
+    @Test
+    public void unknownCommitsMayHaveChangedEverything() {
+        final CommitIndex index = CommitIndex.empty();
+        final ObjectId unknown = ObjectId.fromString("1111111111111111111111111111111111111111");
+        assertThat(index.generation(unknown), is(CommitIndex.GENERATION_UNKNOWN));
+        assertThat(index.mayHaveChanged(unknown, "core-utils"), is(true));
+    }
+}
@@ -0,0 +1,81 @@
+package de.hilling.maven.release.repository;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isEmptyString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class GitContextTest {
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.SINGLE);
+
+    @Test
+    public void walksDoNotShareParsedCommits() throws Exception {
+        try (GitContext context = new GitContext(project.local.getRepository())) {
+            final ObjectId headId = project.local.getRepository().resolve("HEAD");
+            final RevWalk firstWalk;
+            try (GitContext.WalkLease walk = context.walk()) {
+                firstWalk = walk.get();
+                walk.get().setRetainBody(false);
+                walk.get().markStart(walk.get().parseCommit(headId));
+                walk.get().setRevFilter(RevFilter.NO_MERGES);
+                walk.get().setTreeFilter(TreeFilter.ANY_DIFF);
+                walk.get().next();
+            }
+            try (GitContext.WalkLease walk = context.walk()) {
+                assertThat(walk.get(), not(sameInstance(firstWalk)));
+                assertThat(walk.get().getObjectReader(), sameInstance(context.reader()));
+                assertThat(walk.get().getRevFilter(), is(RevFilter.ALL));
+                assertThat(walk.get().getTreeFilter(), is(TreeFilter.ALL));
+                final RevCommit head = walk.get().parseCommit(headId);
+                assertThat(head.getRawBuffer(), notNullValue());
+                assertThat(head.getShortMessage(), not(isEmptyString()));
+            }
+        }
+    }
+
+    @Test
+    public void walksBorrowedAtTheSameTimeAreDistinct() {
+        try (GitContext context = new GitContext(project.local.getRepository());
+             GitContext.WalkLease first = context.walk();
+             GitContext.WalkLease second = context.walk()) {
+            assertThat(first.get(), not(sameInstance(second.get())));
+            assertThat(first.get().getObjectReader(), sameInstance(context.reader()));
+        }
+    }
+
+    @Test
+    public void readersAndWalksCannotBeObtainedAfterClose() {
+        final GitContext context = new GitContext(project.local.getRepository());
+        context.reader();
+        context.close();
+        try {
+            context.reader();
+            fail("the reader of a closed context was handed out");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("is closed"));
+        }
+        try {
+            context.walk();
+            fail("a walk of a closed context was handed out");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("is closed"));
+        }
+    }
+}
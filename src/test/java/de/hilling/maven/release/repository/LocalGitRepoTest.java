@@ -4,17 +4,29 @@ import e2e.ProjectType;
 import scaffolding.GitMatchers;
 import scaffolding.TestProject;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.MatcherAssert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class LocalGitRepoTest {
 
     @Rule
-    public TestProject project = new TestProject(ProjectType.SINGLE);
+    public TestProject     project = new TestProject(ProjectType.SINGLE);
+    @Rule
+    public TemporaryFolder folder  = new TemporaryFolder();
 
 
     @Test
@@ -26,6 +38,85 @@ public class LocalGitRepoTest {
         MatcherAssert.assertThat(GitMatchers.hasLocalTag(repo.git, "some-tagyo"), CoreMatchers.is(false));
     }
 
+    @Test
+    public void localTagsAreFoundWithoutQueryingTheRemote() throws GitAPIException {
+        LocalGitRepo repo = new LocalGitRepo(project.local, "file:///does/not/exist", new SystemStreamLog());
+        tag(project.local, "local-tag");
+        MatcherAssert.assertThat(repo.getRemoteTag("local-tag").isPresent(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void remoteTagsAreCached() throws GitAPIException {
+        tag(project.origin, "remote-tag");
+        LocalGitRepo repo = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        repo.setRemoteTagCacheTtl(3600);
+        MatcherAssert.assertThat(repo.getRemoteTag("remote-tag").isPresent(), CoreMatchers.is(true));
+        MatcherAssert.assertThat(repo.getRemoteTag("missing-tag").isPresent(), CoreMatchers.is(false));
+
+        project.origin.tagDelete().setTags("remote-tag").call();
+        LocalGitRepo secondRun = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        secondRun.setRemoteTagCacheTtl(3600);
+        MatcherAssert.assertThat(secondRun.getRemoteTag("remote-tag").isPresent(), CoreMatchers.is(true));
+        LocalGitRepo uncached = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        MatcherAssert.assertThat(uncached.getRemoteTag("remote-tag").isPresent(), CoreMatchers.is(false));
+    }
+
+    @Test
+    public void releaseTagsAreListedWithASingleRemoteQuery() throws GitAPIException {
+        tag(project.origin, "MULTI_MODULE_RELEASE-1");
+        tag(project.origin, "MULTI_MODULE_RELEASE-2");
+        tag(project.origin, "other-tag");
+        LocalGitRepo repo = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        MatcherAssert.assertThat(repo.getRemoteTag("MULTI_MODULE_RELEASE-1").isPresent(), CoreMatchers.is(true));
+
+        project.origin.tagDelete().setTags("MULTI_MODULE_RELEASE-2", "other-tag").call();
+        MatcherAssert.assertThat(repo.getRemoteTag("MULTI_MODULE_RELEASE-2").isPresent(), CoreMatchers.is(true));
+        MatcherAssert.assertThat(repo.getRemoteTag("other-tag").isPresent(), CoreMatchers.is(false));
+    }
+
+    @Test
+    public void expectedTagsAreListedWithASingleRemoteQuery() throws GitAPIException {
+        tag(project.origin, "MULTI_MODULE_RELEASE-1");
+        tag(project.origin, "MULTI_MODULE_RELEASE-2");
+        LocalGitRepo repo = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        repo.expectTags(Arrays.asList("MULTI_MODULE_RELEASE-1", "MULTI_MODULE_RELEASE-2"));
+        MatcherAssert.assertThat(repo.getRemoteTag("MULTI_MODULE_RELEASE-1").isPresent(), CoreMatchers.is(true));
+
+        project.origin.tagDelete().setTags("MULTI_MODULE_RELEASE-2").call();
+        MatcherAssert.assertThat(repo.getRemoteTag("MULTI_MODULE_RELEASE-2").isPresent(), CoreMatchers.is(true));
+        MatcherAssert.assertThat(repo.getRemoteTag("MULTI_MODULE_RELEASE-3").isPresent(), CoreMatchers.is(false));
+    }
+
+    @Test
+    public void changesAreRevertedInOneBatch() throws Exception {
+        final File pom = new File(project.localDir, "pom.xml");
+        final String originalPom = FileUtils.readFileToString(pom, StandardCharsets.UTF_8);
+        final File untracked = new File(project.localDir, "files-to-revert.txt");
+        FileUtils.writeStringToFile(pom, "changed", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(untracked, "pom.xml", StandardCharsets.UTF_8);
+
+        LocalGitRepo repo = new LocalGitRepo(project.local, null, new SystemStreamLog());
+        MatcherAssert.assertThat(repo.revertChanges(new SystemStreamLog(), Arrays.asList(pom, untracked)),
+                                 CoreMatchers.is(true));
+        MatcherAssert.assertThat(FileUtils.readFileToString(pom, StandardCharsets.UTF_8),
+                                 CoreMatchers.equalTo(originalPom));
+        MatcherAssert.assertThat(untracked.exists(), CoreMatchers.is(false));
+        MatcherAssert.assertThat(project.local.status().call().isClean(), CoreMatchers.is(true));
+    }
+
+    @Test
+    public void directoriesOfASymlinkedCheckoutAreCheckedOnly() throws Exception {
+        final File link = new File(folder.getRoot(), "link");
+        Files.createSymbolicLink(link.toPath(), project.localDir.getCanonicalFile().toPath());
+        FileUtils.writeStringToFile(new File(project.localDir, "untracked.txt"), "untracked", StandardCharsets.UTF_8);
+
+        try (Git linked = new Git(new FileRepositoryBuilder().setWorkTree(link).build())) {
+            LocalGitRepo repo = new LocalGitRepo(linked, null, new SystemStreamLog());
+            repo.errorIfNotClean(Collections.singletonList(new File(project.localDir, "src").getCanonicalFile()),
+                                 Collections.emptyList(), true, 1);
+        }
+    }
+
     private static void tag(Git repo, String name) throws GitAPIException {
         repo.tag().setAnnotated(true).setName(name).setMessage("Some message").call();
     }
@@ -0,0 +1,79 @@
+package de.hilling.maven.release.repository;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ReleaseTagsTest {
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.SINGLE);
+
+    @Test
+    public void unreferencedReleaseTagsAreSummarized() throws Exception {
+        tag(project.local, "MULTI_MODULE_RELEASE-1");
+        tag(project.local, "MULTI_MODULE_RELEASE-2");
+        tag(project.local, "other-tag");
+        final ReleaseTags.Summary summary = releaseTags().summarize(Collections.singleton("MULTI_MODULE_RELEASE-2"));
+        assertThat(summary.getReleaseTags(), is(2));
+        assertThat(summary.getUnreferencedTags().size(), is(1));
+        assertThat(summary.getUnreferencedTags().get(0).getName(), is("refs/tags/MULTI_MODULE_RELEASE-1"));
+        assertThat(summary.getAdvertisedBytes(), greaterThan(0L));
+        assertThat(summary.getTagObjectBytes(), greaterThan(0L));
+        assertThat(summary.getLooseRefBytes(), greaterThan(0L));
+    }
+
+    @Test
+    public void archivedTagsAreMovedOnTheRemote() throws Exception {
+        tag(project.local, "MULTI_MODULE_RELEASE-1");
+        project.pushTags();
+        final ReleaseTags releaseTags = releaseTags();
+        final Ref tag = project.local.getRepository().exactRef("refs/tags/MULTI_MODULE_RELEASE-1");
+        releaseTags.archive(Collections.singletonList(tag), true);
+        for (Git repo : new Git[]{project.local, project.origin}) {
+            assertThat(repo.getRepository().exactRef(tag.getName()), nullValue());
+            final Ref archived = repo.getRepository().exactRef("refs/archive/tags/MULTI_MODULE_RELEASE-1");
+            assertThat(archived, notNullValue());
+            assertThat(archived.getObjectId(), is(tag.getObjectId()));
+        }
+    }
+
+    @Test
+    public void deletedTagsAreRemovedAndRefsPacked() throws Exception {
+        tag(project.local, "MULTI_MODULE_RELEASE-1");
+        tag(project.local, "MULTI_MODULE_RELEASE-2");
+        final ReleaseTags releaseTags = releaseTags();
+        final ReleaseTags.Summary summary = releaseTags.summarize(Collections.singleton("MULTI_MODULE_RELEASE-2"));
+        releaseTags.delete(summary.getUnreferencedTags(), false);
+        assertThat(releaseTags.pack(releaseTags.summarize(Collections.emptySet()).getLooseRefs()), is(true));
+
+        final ReleaseTags.Summary packed = releaseTags.summarize(Collections.singleton("MULTI_MODULE_RELEASE-2"));
+        assertThat(packed.getReleaseTags(), is(1));
+        assertThat(packed.getUnreferencedTags(), empty());
+        assertThat(packed.getLooseRefs(), empty());
+        assertThat(project.local.tagList().call().stream().map(Ref::getName).toArray(),
+                   is(new Object[]{"refs/tags/MULTI_MODULE_RELEASE-2"}));
+    }
+
+    private ReleaseTags releaseTags() {
+        return new ReleaseTags(project.local, "origin");
+    }
+
+    private static void tag(Git repo, String name) throws GitAPIException {
+        repo.tag().setAnnotated(true).setName(name).setMessage("Some message").call();
+    }
+}
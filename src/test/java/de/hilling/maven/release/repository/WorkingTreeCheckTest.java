@@ -0,0 +1,105 @@
+package de.hilling.maven.release.repository;
+
+import e2e.ProjectType;
+import scaffolding.TestProject;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class WorkingTreeCheckTest {
+
+    @Rule
+    public TestProject project = new TestProject(ProjectType.DEEP_DEPENDENCIES);
+
+    @Test
+    public void cleanWorkingTree() throws Exception {
+        final WorkingTreeCheck.Result result = check(asList("", "console-app"), emptyList(), 4);
+        assertThat(result.isClean(), is(true));
+    }
+
+    @Test
+    public void onlyTheGivenDirectoriesAreChecked() throws Exception {
+        write("console-app/untracked.txt");
+        write("more-utilities/untracked.txt");
+        write("console-app/pom.xml");
+
+        final WorkingTreeCheck.Result result = check(singletonList("console-app"), emptyList(), 1);
+        assertThat(result.getUntracked(), contains("console-app/untracked.txt"));
+        assertThat(result.getUncommitted(), contains("console-app/pom.xml"));
+    }
+
+    @Test
+    public void allDirectoriesAreCheckedFromTheRoot() throws Exception {
+        write("console-app/untracked.txt");
+        write("untracked.txt");
+        write("more-utilities/pom.xml");
+        project.local.add().addFilepattern("more-utilities/pom.xml").call();
+
+        final WorkingTreeCheck.Result result = check(asList("", "console-app"), emptyList(), 4);
+        assertThat(result.getUntracked(), contains("console-app/untracked.txt", "untracked.txt"));
+        assertThat(result.getUncommitted(), contains("more-utilities/pom.xml"));
+    }
+
+    @Test
+    public void ignoredAndExcludedFilesAreSkipped() throws Exception {
+        write(".gitignore", "generated/\n");
+        project.local.add().addFilepattern(".gitignore").call();
+        project.local.commit().setMessage("ignoring generated files").call();
+        write("console-app/generated/ignored.txt");
+        write("console-app/node_modules/module/index.js");
+
+        assertThat(check(singletonList(""), singletonList("node_modules/"), 2).isClean(), is(true));
+        final WorkingTreeCheck.Result result = check(singletonList(""), emptyList(), 2);
+        assertThat(result.getUntracked(), contains("console-app/node_modules/module/index.js"));
+        assertThat(result.getUncommitted(), is(empty()));
+    }
+
+    @Test
+    public void trustedStatDataFindsChangesOfSize() throws Exception {
+        write("console-app/untracked.txt");
+        write("console-app/pom.xml", "changed");
+        write("more-utilities/pom.xml");
+
+        final WorkingTreeCheck.Result result = check(singletonList("console-app"), emptyList(), true, 2);
+        assertThat(result.getUntracked(), contains("console-app/untracked.txt"));
+        assertThat(result.getUncommitted(), contains("console-app/pom.xml"));
+        assertThat(check(asList("", "console-app"), emptyList(), true, 4).getUncommitted(),
+                   contains("console-app/pom.xml", "more-utilities/pom.xml"));
+    }
+
+    @Test
+    public void cleanWorkingTreeWithTrustedStatData() throws Exception {
+        assertThat(check(asList("", "console-app"), emptyList(), true, 4).isClean(), is(true));
+    }
+
+    private WorkingTreeCheck.Result check(List<String> directories, List<String> excludes, int threads)
+        throws Exception {
+        return check(directories, excludes, false, threads);
+    }
+
+    private WorkingTreeCheck.Result check(List<String> directories, List<String> excludes, boolean trustStat,
+                                          int threads) throws Exception {
+        return new WorkingTreeCheck(project.local.getRepository(), excludes, trustStat, threads).check(directories);
+    }
+
+    private void write(String path) throws Exception {
+        write(path, "content of " + path);
+    }
+
+    private void write(String path, String content) throws Exception {
+        FileUtils.writeStringToFile(new File(project.localDir, path), content, StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,10 @@
 package de.hilling.maven.release.versioning;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -14,11 +17,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import de.hilling.maven.release.TestUtils;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
 import com.google.gson.Gson;
 
 public class ReleaseInfoTest {
 
-    private static final GsonFactory GSON_FACTORY = new GsonFactory();
     private static final String TEST_RELEASE_INFO;
     private static final ZonedDateTime REFERENCE_DATE = ZonedDateTime.ofInstant(Instant.ofEpochMilli(1030042000000L),
                                                                                 ZoneId.of("Europe/Berlin"));
@@ -39,7 +42,7 @@ public class ReleaseInfoTest {
 
     @Before
     public void setUp() {
-        gson = GSON_FACTORY.createGson();
+        gson = GsonFactory.gson();
         infoBuilder = ImmutableReleaseInfo.builder();
         infoBuilder.tagName("sampletag");
         modulerBuilder = ImmutableModuleVersion.builder();
@@ -66,4 +69,17 @@ public class ReleaseInfoTest {
         final ReleaseInfo releaseInfo = gson.fromJson(TEST_RELEASE_INFO, ImmutableReleaseInfo.class);
         assertEquals(infoBuilder.addModules(modulerBuilder.build()).build(), releaseInfo);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamedStorageMatchesSerialization() throws IOException {
+        final ImmutableReleaseInfo releaseInfo = infoBuilder.addModules(modulerBuilder.build()).build();
+        final ByteArrayOutputStream pretty = new ByteArrayOutputStream();
+        ReleaseInfoStorage.write(releaseInfo, pretty, false);
+        assertEquals(TEST_RELEASE_INFO, pretty.toString(StandardCharsets.UTF_8.name()));
+
+        final ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        ReleaseInfoStorage.write(releaseInfo, compact, true);
+        assertFalse(compact.toString(StandardCharsets.UTF_8.name()).contains("\n"));
+        assertEquals(releaseInfo, ReleaseInfoStorage.read(new ByteArrayInputStream(compact.toByteArray())));
+    }
+}
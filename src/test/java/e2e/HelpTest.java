@@ -35,8 +35,10 @@ public class HelpTest {
     @Test
     public void runningTheHelpMojoTellsYouAboutThePlugin() throws IOException {
         final List<String> helpOutput = mvn(TestUtils.HELP_GOAL);
-        assertThat(helpOutput, containsStrings("This plugin has 4 goals:", TestUtils.PREPARE_GOAL, TestUtils.NEXT_GOAL,
-                                               TestUtils.HELP_GOAL, TestUtils.CLEANUP_GOAL));
+        assertThat(helpOutput, containsStrings("This plugin has 7 goals:", TestUtils.PREPARE_GOAL, TestUtils.NEXT_GOAL,
+                                               TestUtils.HELP_GOAL, TestUtils.CLEANUP_GOAL,
+                                               TestUtils.COMMIT_INDEX_GOAL, TestUtils.TAGS_GOAL,
+                                               TestUtils.HISTORY_GOAL));
     }
 
     private List<String> mvn(String... commands) throws IOException {
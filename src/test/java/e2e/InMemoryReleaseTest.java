@@ -0,0 +1,84 @@
+package e2e;
+
+import scaffolding.MavenExecutionException;
+import scaffolding.TestProject;
+
+import static org.hamcrest.CoreMatchers.allOf;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static scaffolding.CountMatcher.oneOf;
+import static scaffolding.GitMatchers.hasTagWithModuleVersion;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import de.hilling.maven.release.TestUtils;
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.utils.Constants;
+
+/**
+ * Releases with {@code inMemoryRelease=true}, the plugin is declared as extension and configures the
+ * {@code Notes} release info layout.
+ */
+public class InMemoryReleaseTest {
+
+    private static final String GROUP_ID              = TestUtils.TEST_GROUP_ID + ".independentversions";
+    private final        String expectedParentVersion = "1.0";
+    private final        String expectedCoreVersion   = "2.0";
+    private final        String expectedAppVersion    = "3.0";
+
+    @Rule
+    public TestProject testProject = new TestProject(ProjectType.IN_MEMORY_RELEASE);
+
+    @Test
+    public void releaseCanBeBuiltInASingleRun() throws Exception {
+        buildsEachProject(testProject.mvn("-DinMemoryRelease=true", "-DreleaseInfoLayout=File", "install"));
+        assertThat(new File(testProject.localDir, "core-utils/target/core-utils-" + expectedCoreVersion + ".jar")
+                       .exists(), is(true));
+        assertThat(new File(testProject.localDir, "console-app/target/console-app-" + expectedAppVersion + ".jar")
+                       .exists(), is(true));
+        assertThat(new File(testProject.localDir, Constants.IN_MEMORY_RELEASE_POM).exists(), is(false));
+        assertThat(new File(testProject.localDir, ReleaseInfoStorage.RELEASE_INFO_FILE).exists(), is(true));
+        assertThat(testProject.local.status().call().isClean(), is(true));
+        theLocalRepoIsTaggedWithTheModuleNameAndVersion();
+    }
+
+    @Test
+    public void singleRunUsesTheConfiguredReleaseInfoLayout() throws Exception {
+        final ObjectId headBeforeRelease = testProject.local.getRepository().resolve("HEAD");
+        buildsEachProject(testProject.mvn("-DinMemoryRelease=true", "install"));
+        assertThat(testProject.local.getRepository().resolve("HEAD"), equalTo(headBeforeRelease));
+        assertThat(new File(testProject.localDir, ReleaseInfoStorage.RELEASE_INFO_FILE).exists(), is(false));
+        theLocalRepoIsTaggedWithTheModuleNameAndVersion();
+    }
+
+    @Test
+    public void singleRunRejectsReleasePomsInTheBuildDirectories() throws Exception {
+        try {
+            testProject.mvn("-DinMemoryRelease=true", "-DreleasePoms=BuildDirectory", "install");
+            Assert.fail("Should have failed");
+        } catch (MavenExecutionException e) {
+            assertThat(e.output, oneOf(containsString("releasePoms cannot be used with inMemoryRelease")));
+        }
+    }
+
+    private void buildsEachProject(List<String> commandOutput) {
+        assertThat(commandOutput,
+                   allOf(oneOf(containsString("Going to release independent-versions " + expectedParentVersion)),
+                         oneOf(containsString("Going to release core-utils " + expectedCoreVersion)),
+                         oneOf(containsString("Going to release console-app " + expectedAppVersion))));
+    }
+
+    private void theLocalRepoIsTaggedWithTheModuleNameAndVersion() throws Exception {
+        assertThat(testProject.local, hasTagWithModuleVersion(GROUP_ID, "independent-versions", expectedParentVersion));
+        assertThat(testProject.local, hasTagWithModuleVersion(GROUP_ID, "core-utils", expectedCoreVersion));
+        assertThat(testProject.local, hasTagWithModuleVersion(GROUP_ID, "console-app", expectedAppVersion));
+    }
+}
@@ -7,8 +7,10 @@ import scaffolding.TestProject;
 import static de.hilling.maven.release.TestUtils.PREPARE_GOAL;
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static scaffolding.CountMatcher.oneOf;
 import static scaffolding.CountMatcher.twoOf;
@@ -24,6 +26,7 @@ import org.junit.Test;
 
 import de.hilling.maven.release.TestUtils;
 import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+import de.hilling.maven.release.utils.Constants;
 import de.hilling.maven.release.versioning.ImmutableQualifiedArtifact;
 import de.hilling.maven.release.versioning.ReleaseInfo;
 
@@ -63,6 +66,21 @@ public class IndependentVersionsTest {
                                                                                               (coreUtils).get()));
     }
 
+    @Test
+    public void releasePomsCanBeWrittenToTheBuildDirectories() throws Exception {
+        buildsEachProject(testProject.mvnReleasePrepare("-DreleasePoms=BuildDirectory"));
+        assertThat(testProject.local.status().call().getModified(), is(empty()));
+        assertThat(new File(testProject.localDir, Constants.MODULE_BUILD_FILE).exists(), is(false));
+
+        testProject.mvn("-f", "target/" + Constants.RELEASE_REACTOR_POM, "install");
+        assertThat(new File(testProject.localDir, "core-utils/target/core-utils-" + expectedCoreVersion + ".jar")
+                       .exists(), is(true));
+        assertThat(new File(testProject.localDir, "console-app/target/console-app-" + expectedAppVersion + ".jar")
+                       .exists(), is(true));
+        assertThat(testProject.local.status().call().getModified(), is(empty()));
+        theLocalRepoIsTaggedWithTheModuleNameAndVersion();
+    }
+
     private void buildsEachProject(List<String> commandOutput) throws Exception {
         assertThat(commandOutput,
                    allOf(oneOf(containsString("Going to release independent-versions " + expectedParentVersion)),
@@ -1,19 +1,25 @@
 package e2e;
 
+import scaffolding.MavenExecutionException;
 import scaffolding.TestProject;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static scaffolding.CountMatcher.noneOf;
 import static scaffolding.CountMatcher.oneOf;
 import static scaffolding.GitMatchers.hasTag;
 
+import java.io.File;
 import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 
+import de.hilling.maven.release.releaseinfo.ReleaseInfoStorage;
+
 public class NextMojoTest {
 
     @Rule
@@ -29,6 +35,41 @@ public class NextMojoTest {
                    oneOf(containsString("using 1.1 for single-module as it has changed since the " + "last release.")));
     }
 
+    @Test
+    public void releaseInfoCanBeReadFromTheLatestTag() throws Exception {
+        TestProject simple = TestProject.project(ProjectType.SINGLE);
+        simple.mvnReleaseComplete();
+        simple.local.rm().addFilepattern(ReleaseInfoStorage.RELEASE_INFO_FILE).call();
+        simple.local.commit().setMessage("removing release info").call();
+        simple.commitRandomFile(".");
+        List<String> output = simple.mvnReleaserNext("-DreleaseInfoFromTag=true");
+        assertThat(output, oneOf(containsString("release info read from tag")));
+        assertThat(output,
+                   oneOf(containsString("using 1.1 for single-module as it has changed since the " + "last release.")));
+    }
+
+    @Test
+    public void readingTheReleaseInfoFromTheLatestTagFailsIfItsReleaseInfoIsMissing() throws Exception {
+        TestProject simple = TestProject.project(ProjectType.SINGLE);
+        List<String> output = simple.mvnReleaserNext("-DreleaseInfoFromTag=true");
+        assertThat(output, oneOf(containsString("no release tag reachable from HEAD, reading release info from the "
+                                                + "project directory")));
+
+        simple.mvnReleaseComplete();
+        // a partial clone lacks the blobs it has not checked out
+        final String blob = simple.local.getRepository().resolve("HEAD:" + ReleaseInfoStorage.RELEASE_INFO_FILE).name();
+        final File objects = new File(simple.local.getRepository().getDirectory(), "objects");
+        assertThat(new File(new File(objects, blob.substring(0, 2)), blob.substring(2)).delete(), is(true));
+        simple.commitRandomFile(".");
+        try {
+            simple.mvnReleaserNext("-DreleaseInfoFromTag=true");
+            Assert.fail("Should have failed");
+        } catch (MavenExecutionException e) {
+            assertThat(e.output, oneOf(containsString("unable to read release info " + blob + " of tag")));
+            assertThat(e.output, noneOf(containsString("release info read from tag")));
+        }
+    }
+
     @Test
     public void doesNotReReleaseAModuleThatHasNotChanged() throws Exception {
         dependenciesProject.checkNoChanges = false;
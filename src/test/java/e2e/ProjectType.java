@@ -8,6 +8,7 @@ public enum ProjectType {
     INHERITED_VERSIONS("inherited-versions-from-parent"),
     INDEPENDENT_VERSIONS("independent-versions"),
     INDEPENDENT_VERSIONS_BUGFIX("independent-versions-bugfix"),
+    IN_MEMORY_RELEASE("in-memory-release"),
     PARENT_AS_SIBLING("parent-as-sibling"),
     DEEP_DEPENDENCIES("deep-dependencies"),
     MODULE_WITH_TEST_FAILURE("module-with-test-failure"),
@@ -0,0 +1,8 @@
+package de.hilling.maven.release.testprojects.versioninheritor;
+
+public class App {
+    public static void main(String[] args) {
+        Calculator calculator = new Calculator();
+        System.out.println("1 + 2 = " + calculator.add(1, 2));
+    }
+}
@@ -0,0 +1,9 @@
+package de.hilling.maven.release.testprojects.versioninheritor;
+
+public class Calculator {
+
+    public int add(int a, int b) {
+        return a + b;
+    }
+
+}